@@ -35,6 +35,7 @@
 package com.github.klauswk.tty;
 
 import com.sun.jdi.*;
+import com.sun.jdi.event.BreakpointEvent;
 import com.sun.jdi.request.*;
 
 import java.util.ArrayList;
@@ -45,6 +46,8 @@ class BreakpointSpec extends EventRequestSpec {
     List<String> methodArgs;
     int lineNumber;
     ThreadReference threadFilter; /* Thread to break in. null if global breakpoint. */
+    String condition;             /* Stop only if true. null if unconditional. */
+    ExpressionParser.Node conditionNode; /* 'condition', parsed once. */
     public static final String locationTokenDelimiter = ":( \t\n\r";
 
     BreakpointSpec(ReferenceTypeSpec refSpec, int lineNumber, ThreadReference threadFilter) {
@@ -87,6 +90,9 @@ class BreakpointSpec extends EventRequestSpec {
         if (threadFilter != null) {
             bp.addThreadFilter(threadFilter);
         }
+        if (conditionNode != null) {
+            bp.putProperty(BreakpointSpec.class, this);
+        }
         bp.enable();
         return bp;
     }
@@ -107,6 +113,51 @@ class BreakpointSpec extends EventRequestSpec {
         return (methodId != null);
     }
 
+    /**
+     * Make this breakpoint stop only when 'condition' is true.
+     */
+    void setCondition(String condition, ExpressionParser.Node conditionNode) {
+        this.condition = condition;
+        this.conditionNode = conditionNode;
+    }
+
+    /**
+     * Evaluate the condition of the breakpoint hit by 'event', if it
+     * has one, in the frame it was hit in. This runs on the event
+     * handler thread, while the event thread is suspended; the
+     * condition was parsed when the breakpoint was set, so a hit
+     * costs its evaluation and nothing more. It invokes nothing in the
+     * target VM: an invocation resumes threads, which could then stop
+     * at an event this thread would never get to handle.
+     * @return false if the condition is false, true if the event
+     * should stop: no condition, a true one, or one that could not
+     * be evaluated.
+     */
+    static boolean conditionHolds(BreakpointEvent event) {
+        BreakpointSpec spec = (BreakpointSpec)event.request().getProperty(BreakpointSpec.class);
+        if (spec == null || spec.conditionNode == null) {
+            return true;
+        }
+        VirtualMachine vm = event.virtualMachine();
+        ThreadReference thread = event.thread();
+        ExpressionParser.GetFrameWithoutInvocations frameGetter = () -> thread.frame(0);
+        try {
+            Value value = spec.conditionNode.evaluate(vm, frameGetter).interiorGetValue();
+            if (value instanceof BooleanValue) {
+                return ((BooleanValue)value).value();
+            }
+            MessageOutput.println("Breakpoint condition not boolean",
+                                  new Object [] {spec.condition, String.valueOf(value)});
+        } catch (ParseException e) {
+            MessageOutput.println("Breakpoint condition failed",
+                                  new Object [] {spec.condition, e.getMessage()});
+        } catch (RuntimeException e) {
+            MessageOutput.println("Breakpoint condition failed",
+                                  new Object [] {spec.condition, e.toString()});
+        }
+        return true;
+    }
+
     @Override
     public int hashCode() {
         return refSpec.hashCode() + lineNumber +
@@ -185,6 +236,10 @@ class BreakpointSpec extends EventRequestSpec {
             sb.append(':');
             sb.append(lineNumber);
         }
+        if (condition != null) {
+            sb.append(" if ");
+            sb.append(condition);
+        }
         return MessageOutput.format("breakpoint", sb.toString());
     }
 
@@ -41,6 +41,10 @@ import com.sun.jdi.request.*;
 import java.text.*;
 import java.util.*;
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class Commands {
     /**
@@ -48,6 +52,21 @@ public class Commands {
      */
     protected static final int LIST_LINE_LOOKBEHIND = 4;
 
+    /**
+     * Number of frames shown by {@code where} when no range is given.
+     */
+    protected static final int WHERE_FRAME_LIMIT = 200;
+
+    /**
+     * Number of frames {@code where} fetches and prints at a time.
+     */
+    private static final int WHERE_FRAME_CHUNK = 50;
+
+    /**
+     * Separates a breakpoint location from its condition during {@code stop}.
+     */
+    private static final Pattern CONDITION_PATTERN = Pattern.compile("(^|\\s+)if\\s+");
+
     abstract static class AsyncExecution {
         abstract void action();
 
@@ -101,7 +120,17 @@ public class Commands {
     }
 
     private Value evaluate(String expr) {
-        Value result = null;
+        ExpressionParser.Evaluation evaluation = evaluation(expr);
+        return (evaluation == null) ? null : evaluation.value();
+    }
+
+    /*
+     * Evaluate 'expr' in the current frame, reporting any failure.
+     * The evaluation holds the value, if there is one, for
+     * getStringValue; it is null if there was no VM to evaluate in.
+     */
+    private ExpressionParser.Evaluation evaluation(String expr) {
+        ExpressionParser.Evaluation evaluation = null;
         ExpressionParser.GetFrame frameGetter = null;
         try {
             final ThreadInfo threadInfo = ThreadInfo.getCurrentThreadInfo();
@@ -113,7 +142,8 @@ public class Commands {
                         }
                     };
             }
-            result = ExpressionParser.evaluate(expr, Env.vm(), frameGetter);
+            evaluation = new ExpressionParser.Evaluation(Env.vm(), frameGetter);
+            evaluation.evaluate(expr);
         } catch (InvocationException ie) {
             MessageOutput.println("Exception in expression:",
                                   ie.exception().referenceType().name());
@@ -131,14 +161,14 @@ public class Commands {
                 MessageOutput.printDirectln(s);// Special case: use printDirectln()
             }
         }
-        return result;
+        return evaluation;
     }
 
-    private String getStringValue() {
+    private String getStringValue(ExpressionParser.Evaluation evaluation) {
          Value val = null;
          String valStr = null;
          try {
-              val = ExpressionParser.getMassagedValue();
+              val = evaluation.getMassagedValue();
               valStr = val.toString();
          } catch (ParseException e) {
               String msg = e.getMessage();
@@ -229,7 +259,7 @@ public class Commands {
 
     void commandClasses() {
         StringBuilder classList = new StringBuilder();
-        for (ReferenceType refType : Env.vm().allClasses()) {
+        for (ReferenceType refType : Env.loadedClasses().all()) {
             classList.append(refType.name());
             classList.append("\n");
         }
@@ -599,6 +629,7 @@ public class Commands {
                 ThreadInfo threadInfo = doGetThread(t.nextToken());
                 if (threadInfo != null) {
                     threadInfo.invalidate();
+                    ThreadInfo.resumed(threadInfo.getThread());
                     threadInfo.getThread().resume();
                 }
             }
@@ -921,22 +952,66 @@ public class Commands {
         }
     }
 
-    private void dumpStack(ThreadInfo threadInfo, boolean showPC) {
-        List<StackFrame> stack = null;
+    /*
+     * Dump the frames of 'range', or if it is null up to
+     * WHERE_FRAME_LIMIT frames from the current one. Only the frames
+     * dumped are fetched, a chunk at a time, and each chunk is shown
+     * before the next is fetched.
+     */
+    private void dumpStack(ThreadInfo threadInfo, boolean showPC, int[] range) {
         try {
-            stack = threadInfo.getStack();
+            int nFrames = threadInfo.frameCount();
+            int start;
+            int end;
+            if (range == null) {
+                start = threadInfo.getCurrentFrameIndex();
+                end = Math.min(nFrames, start + WHERE_FRAME_LIMIT);
+            } else {
+                start = range[0];
+                end = Math.min(nFrames, range[1]);
+                if (start >= nFrames) {
+                    MessageOutput.println("End of stack.");
+                    return;
+                }
+            }
+            for (int i = start; i < end; i += WHERE_FRAME_CHUNK) {
+                List<StackFrame> frames = threadInfo.frames(i, Math.min(WHERE_FRAME_CHUNK, end - i));
+                for (int j = 0; j < frames.size(); j++) {
+                    dumpFrame(i + j, showPC, frames.get(j));
+                }
+                MessageOutput.flush();
+            }
+            if (range == null && end < nFrames) {
+                MessageOutput.println("More frames",
+                                      new Object [] {nFrames - end, end + 1, nFrames});
+            }
         } catch (IncompatibleThreadStateException e) {
             MessageOutput.println("Current thread isnt suspended.");
-            return;
         }
-        if (stack == null) {
-            MessageOutput.println("Thread is not running (no stack).");
-        } else {
-            int nFrames = stack.size();
-            for (int i = threadInfo.getCurrentFrameIndex(); i < nFrames; i++) {
-                StackFrame frame = stack.get(i);
-                dumpFrame (i, showPC, frame);
+    }
+
+    /*
+     * Parse a "<from>..<to>" frame range, numbered as "where" shows
+     * frames; either end may be left out.
+     * @return the first frame index and the index past the last, or
+     * null if 'token' is not a range.
+     */
+    private int[] parseFrameRange(String token) {
+        int dots = token.indexOf("..");
+        if (dots < 0) {
+            return null;
+        }
+        try {
+            String from = token.substring(0, dots);
+            String to = token.substring(dots + 2);
+            int first = from.isEmpty() ? 1 : Integer.parseInt(from);
+            int last = to.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(to);
+            if (first < 1 || last < first) {
+                return null;
             }
+            return new int[] {first - 1, last};
+        } catch (NumberFormatException e) {
+            return null;
         }
     }
 
@@ -978,26 +1053,46 @@ public class Commands {
     }
 
     void commandWhere(StringTokenizer t, boolean showPC) {
-        if (!t.hasMoreTokens()) {
+        /*
+         * Allowed syntax:
+         *    where [<thread_id> | all] [<from>..<to>]
+         */
+        String token = t.hasMoreTokens() ? t.nextToken() : null;
+        String rangeToken = null;
+        if (token != null && token.contains("..")) {
+            rangeToken = token;
+            token = null;
+        } else if (t.hasMoreTokens()) {
+            rangeToken = t.nextToken();
+        }
+        int[] range = null;
+        if (rangeToken != null) {
+            range = parseFrameRange(rangeToken);
+            if (range == null) {
+                MessageOutput.println("Invalid frame range", rangeToken);
+                return;
+            }
+        }
+
+        if (token == null) {
             ThreadInfo threadInfo = ThreadInfo.getCurrentThreadInfo();
             if (threadInfo == null) {
                 MessageOutput.println("No thread specified.");
                 return;
             }
-            dumpStack(threadInfo, showPC);
+            dumpStack(threadInfo, showPC, range);
         } else {
-            String token = t.nextToken();
             if (token.toLowerCase().equals("all")) {
                 for (ThreadInfo threadInfo : ThreadInfo.threads()) {
                     MessageOutput.println("Thread:",
                                           threadInfo.getThread().name());
-                    dumpStack(threadInfo, showPC);
+                    dumpStack(threadInfo, showPC, range);
                 }
             } else {
                 ThreadInfo threadInfo = doGetThread(token);
                 if (threadInfo != null) {
                     ThreadInfo.setCurrentThreadInfo(threadInfo);
-                    dumpStack(threadInfo, showPC);
+                    dumpStack(threadInfo, showPC, range);
                 }
             }
         }
@@ -1167,13 +1262,95 @@ public class Commands {
         Env.setTraceFlags(traceFlags);
     }
 
+    void commandEventOutput(StringTokenizer t) {
+        if (!t.hasMoreTokens()) {
+            MessageOutput.println("eventoutput settings",
+                                  new Object [] {EventOutput.policy().name().toLowerCase(),
+                                                 EventOutput.capacity(),
+                                                 EventOutput.queued()});
+            return;
+        }
+        EventOutput.Policy policy = EventOutput.policy();
+        int capacity = EventOutput.capacity();
+        while (t.hasMoreTokens()) {
+            String token = t.nextToken();
+            if (token.equals("block")) {
+                policy = EventOutput.Policy.BLOCK;
+            } else if (token.equals("drop")) {
+                policy = EventOutput.Policy.DROP;
+            } else {
+                try {
+                    capacity = Integer.parseInt(token);
+                } catch (NumberFormatException nfe) {
+                    capacity = 0;
+                }
+                if (capacity <= 0) {
+                    MessageOutput.println("eventoutput usage");
+                    return;
+                }
+            }
+        }
+        EventOutput.setPolicy(policy);
+        EventOutput.setCapacity(capacity);
+    }
+
+    /*
+     * profile <seconds> [interval-ms] [thread-filter]
+     */
+    void commandProfile(StringTokenizer t) {
+        long seconds;
+        long interval = Profiler.DEFAULT_INTERVAL;
+        String threadName = null;
+        String threadId = null;
+        try {
+            seconds = Long.parseLong(t.nextToken());
+            String token = t.hasMoreTokens() ? t.nextToken() : null;
+            if (token != null && !token.equals("thread") && !token.startsWith("t@")) {
+                interval = Long.parseLong(token);
+                token = t.hasMoreTokens() ? t.nextToken() : null;
+            }
+            if (token != null) {
+                if (token.equals("thread")) {
+                    threadName = t.nextToken();
+                } else if (token.startsWith("t@")) {
+                    threadId = token;
+                } else {
+                    seconds = 0;
+                }
+            }
+        } catch (NoSuchElementException | NumberFormatException e) {
+            seconds = 0;
+        }
+        if (seconds <= 0 || interval <= 0 || t.hasMoreTokens()) {
+            MessageOutput.println("profile usage");
+            return;
+        }
+        ThreadReference thread = null;
+        if (threadId != null) {
+            ThreadInfo threadInfo = doGetThread(threadId);
+            if (threadInfo == null) {
+                return;
+            }
+            thread = threadInfo.getThread();
+        }
+        final Profiler profiler = new Profiler(Env.vm(), seconds * 1000, interval,
+                                               threadName, thread);
+        MessageOutput.println("Profiling", new Object [] {seconds, interval});
+        new AsyncExecution() {
+                @Override
+                void action() {
+                    profiler.run();
+                }
+            };
+    }
+
     void commandStop(StringTokenizer t) {
         byte suspendPolicy = EventRequest.SUSPEND_ALL;
         ThreadReference threadFilter = null;
 
         /*
          * Allowed syntax:
-         *    stop [go|thread] [<thread_id>] <at|in> <location>
+         *    stop [go|thread] [<thread_id>] <at|in> <location> [if <expr>]
          * If no options are given, the current list of breakpoints is printed.
          * If "go" is specified, then immediately resume after stopping. No threads are suspended.
          * If "thread" is specified, then only suspend the thread we stop in.
@@ -1182,6 +1359,8 @@ public class Commands {
          * <location> can either be a line number or a method:
          *    - <class id>:<line>
          *    - <class id>.<method>[(argument_type,...)]
+         * If "if <expr>" is given, only stop when the boolean <expr> is true
+         * in the frame of the breakpoint.
          */
 
         if (!t.hasMoreTokens()) {
@@ -1234,9 +1413,37 @@ public class Commands {
 
         token = t.nextToken(BreakpointSpec.locationTokenDelimiter);
 
-        BreakpointSpec spec = parseBreakpointSpec(t, token, threadFilter, "printstopcommandusage");
+        /* Split off the condition, if any, and parse it now rather than at each hit. */
+        String location = t.hasMoreTokens() ? t.nextToken("") : "";
+        String condition = null;
+        ExpressionParser.Node conditionNode = null;
+        Matcher m = CONDITION_PATTERN.matcher(location);
+        if (m.find()) {
+            condition = location.substring(m.end()).trim();
+            location = location.substring(0, m.start());
+            if (suspendPolicy == EventRequest.SUSPEND_NONE) {
+                MessageOutput.println("Breakpoint condition with go");
+                return;
+            }
+            try {
+                conditionNode = ExpressionParser.parse(condition, false);
+            } catch (ParseException e) {
+                MessageOutput.println("Parse exception:", e.getMessage());
+                return;
+            }
+            if (conditionNode == null) {
+                MessageOutput.println("Breakpoint condition invokes", condition);
+                return;
+            }
+        }
+
+        BreakpointSpec spec = parseBreakpointSpec(new StringTokenizer(location), token,
+                                                  threadFilter, "printstopcommandusage");
         if (spec != null) {
             spec.suspendPolicy = suspendPolicy;
+            if (condition != null) {
+                spec.setCondition(condition, conditionNode);
+            }
             resolveNow(spec);
         }
     }
@@ -1338,7 +1545,7 @@ public class Commands {
         }
     }
 
-    void turnOnExitTrace(ThreadInfo threadInfo, int suspendPolicy) {
+    MethodExitRequest turnOnExitTrace(ThreadInfo threadInfo, int suspendPolicy) {
         EventRequestManager erm = Env.vm().eventRequestManager();
         MethodExitRequest exit = erm.createMethodExitRequest();
         if (threadInfo != null) {
@@ -1347,7 +1554,56 @@ public class Commands {
         Env.addExcludes(exit);
         exit.setSuspendPolicy(suspendPolicy);
         exit.enable();
+        return exit;
+    }
 
+    /*
+     * trace record [<file>] methods [thread]
+     *
+     * Like "trace go methods", but the events go to a TraceRecorder
+     * file instead of the terminal.
+     */
+    private void traceRecord(StringTokenizer t) {
+        String fileName = TraceRecorder.DEFAULT_FILE;
+        String modif = t.hasMoreTokens() ? t.nextToken() : "";
+        if (!modif.equals("methods")) {
+            fileName = modif;
+            modif = t.hasMoreTokens() ? t.nextToken() : "";
+        }
+        if (!modif.equals("methods") || fileName.isEmpty()) {
+            MessageOutput.println("Can only trace");
+            return;
+        }
+        ThreadInfo threadInfo = null;
+        if (t.hasMoreTokens()) {
+            threadInfo = doGetThread(t.nextToken());
+            if (threadInfo == null) {
+                return;
+            }
+        }
+
+        commandUntrace(new StringTokenizer("methods"));
+        TraceRecorder recorder;
+        try {
+            recorder = TraceRecorder.start(Paths.get(fileName));
+        } catch (IOException | RuntimeException e) {
+            MessageOutput.println("Unable to write trace file", new Object [] {fileName,
+                                                                             e.toString()});
+            return;
+        }
+        EventRequestManager erm = Env.vm().eventRequestManager();
+        MethodEntryRequest entry = erm.createMethodEntryRequest();
+        if (threadInfo != null) {
+            entry.addThreadFilter(threadInfo.getThread());
+        }
+        Env.addExcludes(entry);
+        entry.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+        recorder.attach(entry);
+        entry.enable();
+        MethodExitRequest exit = turnOnExitTrace(threadInfo, EventRequest.SUSPEND_NONE);
+        recorder.attach(exit);
+        methodTraceCommand = MessageOutput.format("trace record methods in effect",
+                                                  recorder.file().toString());
     }
 
     static String methodTraceCommand = null;
@@ -1361,10 +1617,14 @@ public class Commands {
         /*
          * trace [go] methods [thread]
          * trace [go] method exit | exits [thread]
+         * trace record [<file>] methods [thread]
          */
         if (t.hasMoreTokens()) {
             modif = t.nextToken();
-            if (modif.equals("go")) {
+            if (modif.equals("record")) {
+                traceRecord(t);
+                return;
+            } else if (modif.equals("go")) {
                 suspendPolicy = EventRequest.SUSPEND_NONE;
                 goStr = " go ";
                 if (t.hasMoreTokens()) {
@@ -1478,11 +1738,181 @@ public class Commands {
             modif = t.nextToken();
         }
         if (modif == null || modif.equals("methods")) {
-            erm.deleteEventRequests(erm.methodEntryRequests());
-            erm.deleteEventRequests(erm.methodExitRequests());
+            erm.deleteEventRequests(traceRequests(erm.methodEntryRequests()));
+            erm.deleteEventRequests(traceRequests(erm.methodExitRequests()));
             Env.setAtExitMethod(null);
             methodTraceCommand = null;
+            TraceRecorder recorder = TraceRecorder.stop();
+            if (recorder != null) {
+                MessageOutput.println("Trace recorded", new Object [] {recorder.written(),
+                                                                       recorder.file().toString()});
+            }
+        }
+    }
+
+    /*
+     * The method requests of 'trace', leaving out those of other
+     * commands that collect method events, such as 'count'.
+     */
+    private static List<EventRequest> traceRequests(List<? extends EventRequest> requests) {
+        List<EventRequest> list = new ArrayList<>();
+        for (EventRequest request : requests) {
+            MethodEventSink sink = MethodEventSink.sinkFor(request);
+            if (sink == null || sink instanceof TraceRecorder) {
+                list.add(request);
+            }
+        }
+        return list;
+    }
+
+    /*
+     * count
+     * count methods <class pattern> [seconds]
+     * count stop
+     */
+    void commandCount(StringTokenizer t) {
+        if (!t.hasMoreTokens()) {
+            MethodCounter counter = MethodCounter.current();
+            if (counter == null) {
+                MessageOutput.println("Not counting method calls.");
+            } else {
+                counter.print();
+            }
+            return;
+        }
+        String modif = t.nextToken();
+        if (modif.equals("stop") && !t.hasMoreTokens()) {
+            MethodCounter counter = MethodCounter.stop();
+            if (counter == null) {
+                MessageOutput.println("Not counting method calls.");
+            } else {
+                counter.print();
+            }
+            return;
+        }
+        if (!modif.equals("methods") || !t.hasMoreTokens()) {
+            MessageOutput.println("count usage");
+            return;
+        }
+        String classPattern = t.nextToken();
+        long seconds = 0;
+        if (t.hasMoreTokens()) {
+            try {
+                seconds = Long.parseLong(t.nextToken());
+            } catch (NumberFormatException nfe) {
+                seconds = -1;
+            }
+            if (seconds <= 0 || t.hasMoreTokens()) {
+                MessageOutput.println("count usage");
+                return;
+            }
+        }
+
+        final MethodCounter counter = MethodCounter.start(Env.vm(), classPattern);
+        if (seconds == 0) {
+            MessageOutput.println("Counting method calls", classPattern);
+            return;
+        }
+        MessageOutput.println("Counting method calls for",
+                              new Object [] {classPattern, seconds});
+        final long millis = seconds * 1000;
+        new AsyncExecution() {
+                @Override
+                void action() {
+                    try {
+                        Thread.sleep(millis);
+                    } catch (InterruptedException e) {
+                    }
+                    // Unless replaced or stopped meanwhile.
+                    if (MethodCounter.stop(counter)) {
+                        counter.print();
+                    }
+                }
+            };
+    }
+
+    /*
+     * latency
+     * latency <class pattern>
+     * latency stop
+     */
+    void commandLatency(StringTokenizer t) {
+        if (!t.hasMoreTokens()) {
+            MethodLatency latency = MethodLatency.current();
+            if (latency == null) {
+                MessageOutput.println("Not measuring method latency.");
+            } else {
+                latency.print();
+            }
+            return;
         }
+        String token = t.nextToken();
+        if (t.hasMoreTokens()) {
+            MessageOutput.println("latency usage");
+            return;
+        }
+        if (token.equals("stop")) {
+            MethodLatency latency = MethodLatency.stop();
+            if (latency == null) {
+                MessageOutput.println("Not measuring method latency.");
+            } else {
+                latency.print();
+            }
+            return;
+        }
+        MethodLatency.start(Env.vm(), token);
+        MessageOutput.println("Measuring method latency", token);
+    }
+
+    /*
+     * vthreads
+     * vthreads <sample rate>
+     * vthreads stop
+     */
+    void commandVThreads(StringTokenizer t) {
+        if (!t.hasMoreTokens()) {
+            VThreadSampler sampler = VThreadSampler.current();
+            if (sampler == null) {
+                MessageOutput.println("Not sampling vthreads.");
+            } else {
+                sampler.print();
+            }
+            return;
+        }
+        String token = t.nextToken();
+        if (t.hasMoreTokens()) {
+            MessageOutput.println("vthreads usage");
+            return;
+        }
+        if (token.equals("stop")) {
+            VThreadSampler sampler = VThreadSampler.stop();
+            if (sampler == null) {
+                MessageOutput.println("Not sampling vthreads.");
+            } else {
+                sampler.print();
+            }
+            return;
+        }
+        int rate;
+        try {
+            rate = Integer.parseInt(token);
+        } catch (NumberFormatException nfe) {
+            rate = 0;
+        }
+        if (rate < 1) {
+            MessageOutput.println("vthreads usage");
+            return;
+        }
+        VThreadSampler.start(Env.vm(), rate);
+        MessageOutput.println("Sampling vthreads", new Object [] {rate});
+    }
+
+    void commandTraceQuery(StringTokenizer t) {
+        List<String> args = new ArrayList<>();
+        while (t.hasMoreTokens()) {
+            args.add(t.nextToken());
+        }
+        TraceQuery.query(args.toArray(new String[0]));
     }
 
     /**
@@ -1753,7 +2183,8 @@ public class Commands {
 
         while (t.hasMoreTokens()) {
             String expr = t.nextToken("");
-            Value val = evaluate(expr);
+            ExpressionParser.Evaluation evaluation = evaluation(expr);
+            Value val = (evaluation == null) ? null : evaluation.value();
             if (val == null) {
                 MessageOutput.println("expr is null", expr.toString());
             } else if (dumpObject && (val instanceof ObjectReference) &&
@@ -1766,7 +2197,7 @@ public class Commands {
                 dump(obj, refType, refType);
                 MessageOutput.println("grouping end character");
             } else {
-                  String strVal = getStringValue();
+                  String strVal = getStringValue(evaluation);
                   if (strVal != null) {
                      MessageOutput.println("expr is value", new Object [] {expr.toString(),
                                                                       strVal});
@@ -1810,11 +2241,12 @@ public class Commands {
         }
 
         String expr = t.nextToken("");
-        Value val = evaluate(expr);
+        ExpressionParser.Evaluation evaluation = evaluation(expr);
+        Value val = (evaluation == null) ? null : evaluation.value();
 
         try {
             if (val instanceof ObjectReference object) {
-                String strVal = getStringValue();
+                String strVal = getStringValue(evaluation);
                 if (strVal != null) {
                     MessageOutput.println("Monitor information for expr",
                                       new Object [] {expr.trim(),
@@ -1900,6 +2332,29 @@ public class Commands {
         }
     }
 
+    void commandThreadDump(StringTokenizer t) {
+        boolean jstack = false;
+        Path file = null;
+        if (t.hasMoreTokens()) {
+            jstack = t.nextToken().equals("jstack");
+            if (jstack && t.hasMoreTokens()) {
+                file = Paths.get(t.nextToken());
+            }
+            if (!jstack || t.hasMoreTokens()) {
+                MessageOutput.println("threaddump usage");
+                MessageOutput.printPrompt();
+                return;
+            }
+        }
+        final ThreadDump dump = new ThreadDump(Env.vm(), jstack, file);
+        new AsyncExecution() {
+                @Override
+                void action() {
+                    dump.run();
+                }
+            };
+    }
+
     void doDisableGC(StringTokenizer t) {
         if (!t.hasMoreTokens()) {
             MessageOutput.println("No object specified.");
@@ -1907,10 +2362,11 @@ public class Commands {
         }
 
         String expr = t.nextToken("");
-        Value val = evaluate(expr);
+        ExpressionParser.Evaluation evaluation = evaluation(expr);
+        Value val = (evaluation == null) ? null : evaluation.value();
         if (val instanceof ObjectReference object) {
             object.disableCollection();
-            String strVal = getStringValue();
+            String strVal = getStringValue(evaluation);
             if (strVal != null) {
                  MessageOutput.println("GC Disabled for", strVal);
             }
@@ -1935,10 +2391,11 @@ public class Commands {
         }
 
         String expr = t.nextToken("");
-        Value val = evaluate(expr);
+        ExpressionParser.Evaluation evaluation = evaluation(expr);
+        Value val = (evaluation == null) ? null : evaluation.value();
         if (val instanceof ObjectReference object) {
             object.enableCollection();
-            String strVal = getStringValue();
+            String strVal = getStringValue(evaluation);
             if (strVal != null) {
                  MessageOutput.println("GC Enabled for", strVal);
             }
@@ -1969,10 +2426,11 @@ public class Commands {
             return;
         }
         String expr = t.nextToken("");
-        Value val = evaluate(expr);
+        ExpressionParser.Evaluation evaluation = evaluation(expr);
+        Value val = (evaluation == null) ? null : evaluation.value();
         if (val != null) {
             Env.setSavedValue(key, val);
-            String strVal = getStringValue();
+            String strVal = getStringValue(evaluation);
             if (strVal != null) {
                  MessageOutput.println("saved", strVal);
             }
@@ -2028,7 +2486,7 @@ public class Commands {
         // Overloading is not handled here.
         String methodName = t.nextToken();
 
-        List<ReferenceType> classes = Env.vm().classesByName(className);
+        List<ReferenceType> classes = Env.loadedClasses().byName(className);
         // TO DO: handle multiple classes found
         if (classes.size() == 0) {
             if (className.indexOf('.') < 0) {
@@ -2096,7 +2554,7 @@ public class Commands {
             MessageOutput.println("Specify classes to redefine");
         } else {
             String className = t.nextToken();
-            List<ReferenceType> classes = Env.vm().classesByName(className);
+            List<ReferenceType> classes = Env.loadedClasses().byName(className);
             if (classes.size() == 0) {
                 MessageOutput.println("No class named", className);
                 return;
@@ -2157,6 +2615,7 @@ public class Commands {
         try {
             StackFrame frame = threadInfo.getCurrentFrame();
             threadInfo.getThread().popFrames(frame);
+            ThreadInfo.resumed();
             threadInfo = ThreadInfo.getCurrentThreadInfo();
             ThreadInfo.setCurrentThreadInfo(threadInfo);
             if (reenter) {
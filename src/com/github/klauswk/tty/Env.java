@@ -40,6 +40,9 @@ import com.sun.jdi.request.MethodEntryRequest;
 import com.sun.jdi.request.MethodExitRequest;
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.Charset;
 import java.nio.file.Paths;
 import java.nio.file.Path;
 import java.util.stream.*;
@@ -50,11 +53,22 @@ class Env {
 
     private static VMConnection connection;
 
+    private static final LoadedClasses loadedClasses = new LoadedClasses();
+
     private static SourceMapper sourceMapper = new SourceMapper("");
+    private static boolean watchSources = false;
+    private static boolean threadedEvents = false;
+    private static int vthreadSampleRate = 0;
     private static List<String> excludes;
 
-    private static final int SOURCE_CACHE_SIZE = 5;
-    private static List<SourceCode> sourceCache = new LinkedList<SourceCode>();
+    /*
+     * Source files are kept mapped, most recently used last, until the
+     * bytes they hold exceed this budget.
+     */
+    private static final long SOURCE_CACHE_BUDGET = 64L * 1024 * 1024;
+    private static LinkedHashMap<String, SourceCode> sourceCache =
+        new LinkedHashMap<String, SourceCode>(16, 0.75f, true);
+    private static long sourceCacheBytes = 0;
 
     private static HashMap<String, Value> savedValues = new HashMap<String, Value>();
     private static Method atExitMethod;
@@ -87,6 +101,10 @@ class Env {
         connection.setTraceFlags(flags);
     }
 
+    static LoadedClasses loadedClasses() {
+        return loadedClasses;
+    }
+
     static VMConnection connection() {
         return connection;
     }
@@ -112,17 +130,82 @@ class Env {
             MessageOutput.lnprint(message);
             MessageOutput.println();
         }
+        MessageOutput.flush();
         System.exit(0);
     }
 
     static void setSourcePath(String srcPath) {
-        sourceMapper = new SourceMapper(srcPath);
-        sourceCache.clear();
+        useSourceMapper(new SourceMapper(srcPath));
     }
 
     static void setSourcePath(List<String> srcList) {
-        sourceMapper = new SourceMapper(srcList);
+        useSourceMapper(new SourceMapper(srcList));
+    }
+
+    private static void useSourceMapper(SourceMapper mapper) {
+        sourceMapper.close();
+        sourceMapper = mapper;
+        mapper.setWatching(watchSources);
+        clearSourceCache();
+    }
+
+    /**
+     * Keep the source file list and line cache current as files
+     * under the source path are created, changed and deleted.
+     */
+    static void setWatchSources(boolean watch) {
+        watchSources = watch;
+        sourceMapper.setWatching(watch);
+    }
+
+    /**
+     * Handle events that suspend only their thread on a virtual thread
+     * per target thread, rather than all on the event handler thread.
+     */
+    static void setThreadedEvents(boolean threaded) {
+        threadedEvents = threaded;
+    }
+
+    static boolean threadedEvents() {
+        return threadedEvents;
+    }
+
+    /**
+     * Sample one in 'rate' virtual thread starts from the time the VM
+     * is connected, or none if 'rate' is 0.
+     */
+    static void setVThreadSampleRate(int rate) {
+        vthreadSampleRate = rate;
+    }
+
+    static int vthreadSampleRate() {
+        return vthreadSampleRate;
+    }
+
+    /**
+     * Drop any cached lines read from 'path', or from below it if it
+     * was a directory. Entries are keyed by package-relative name, so
+     * a directory matches every entry whose package directories it ends
+     * with; dropping one too many only costs a reload.
+     */
+    static synchronized void invalidateSource(Path path) {
+        Iterator<Map.Entry<String, SourceCode>> iter = sourceCache.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<String, SourceCode> entry = iter.next();
+            Path key = Paths.get(entry.getKey());
+            for (int i = 1; i <= key.getNameCount(); i++) {
+                if (path.endsWith(key.subpath(0, i))) {
+                    sourceCacheBytes -= entry.getValue().size();
+                    iter.remove();
+                    break;
+                }
+            }
+        }
+    }
+
+    private static synchronized void clearSourceCache() {
         sourceCache.clear();
+        sourceCacheBytes = 0;
     }
 
     static String getSourcePath() {
@@ -137,6 +220,10 @@ class Env {
     	return sourceMapper.getSourceFilesPath();
     }
 
+    static SymbolIndex.TypeSymbols getTypeSymbols(String className) {
+        return sourceMapper.typeSymbols(className);
+    }
+
     private static List<String> excludes() {
         if (excludes == null) {
             setExcludes("java.*, javax.*, sun.*, com.sun.*, jdk.*");
@@ -204,35 +291,60 @@ class Env {
         }
 
         try {
-            String fileName = location.sourceName();
-
-            Iterator<SourceCode> iter = sourceCache.iterator();
-            SourceCode code = null;
-            while (iter.hasNext()) {
-                SourceCode candidate = iter.next();
-                if (candidate.fileName().equals(fileName)) {
-                    code = candidate;
-                    iter.remove();
-                    break;
-                }
-            }
-            if (code == null) {
-                BufferedReader reader = sourceReader(location);
-                if (reader == null) {
-                    throw new FileNotFoundException(fileName);
-                }
-                code = new SourceCode(fileName, reader);
-                if (sourceCache.size() == SOURCE_CACHE_SIZE) {
-                    sourceCache.remove(sourceCache.size() - 1);
+            String key = SourceMapper.relativeSourceName(location, '/');
+            try {
+                return sourceCode(key, location).sourceLine(lineNumber);
+            } catch (InternalError e) {
+                /*
+                 * A mapped file was truncated under us. Drop what was
+                 * cached for it and read it again as it is now.
+                 */
+                SourceCode stale = sourceCache.remove(key);
+                if (stale != null) {
+                    sourceCacheBytes -= stale.size();
                 }
+                return sourceCode(key, location).sourceLine(lineNumber);
             }
-            sourceCache.add(0, code);
-            return code.sourceLine(lineNumber);
         } catch (AbsentInformationException e) {
             throw new IllegalArgumentException();
         }
     }
 
+    private static SourceCode sourceCode(String key, Location location)
+                                         throws IOException, AbsentInformationException {
+        SourceCode code = sourceCache.get(key);
+        if (code != null && code.isStale()) {
+            sourceCache.remove(key);
+            sourceCacheBytes -= code.size();
+            code = null;
+        }
+        if (code == null) {
+            ByteBuffer content = sourceMapper.sourceBuffer(location);
+            if (content == null) {
+                throw new FileNotFoundException(location.sourceName());
+            }
+            File mapped = (content instanceof MappedByteBuffer) ? sourceMapper.sourceFile(location)
+                                                                : null;
+            code = new SourceCode(key, content, mapped);
+            sourceCache.put(key, code);
+            sourceCacheBytes += code.size();
+            trimSourceCache();
+        }
+        return code;
+    }
+
+    /*
+     * Evict least recently used sources until the cache fits its
+     * budget again. The most recent entry is always kept.
+     */
+    private static void trimSourceCache() {
+        Iterator<SourceCode> iter = sourceCache.values().iterator();
+        while (sourceCacheBytes > SOURCE_CACHE_BUDGET && sourceCache.size() > 1) {
+            sourceCacheBytes -= iter.next().size();
+            iter.remove();
+        }
+    }
+
     /** Return a description of an object. */
     static String description(ObjectReference ref) {
         ReferenceType clazz = ref.referenceType();
@@ -256,15 +368,13 @@ class Env {
         // loaded class whose name matches this limited regular
         // expression is selected.
         idToken = idToken.substring(1);
-        for (ReferenceType type : Env.vm().allClasses()) {
-            if (type.name().endsWith(idToken)) {
-                cls = type;
-                break;
-            }
+        List<ReferenceType> classes = loadedClasses.endingWith(idToken);
+        if (classes.size() > 0) {
+            cls = classes.get(0);
         }
     } else {
             // It's a class name
-            List<ReferenceType> classes = Env.vm().classesByName(idToken);
+            List<ReferenceType> classes = loadedClasses.byName(idToken);
             if (classes.size() > 0) {
                 // TO DO: handle multiples
                 cls = classes.get(0);
@@ -289,34 +399,96 @@ class Env {
       return Env.mainClass;
     }
 
+    /**
+     * The content of one source file together with the offset at which
+     * each of its lines starts. Lines are decoded only when asked for.
+     *
+     * A mapped file that is rewritten in place shows its new bytes at
+     * the old line offsets, so for one the file's size and modification
+     * time are kept to tell when it has to be read again.
+     */
     static class SourceCode {
-        private String fileName;
-        private List<String> sourceLines = new ArrayList<String>();
-
-        SourceCode(String fileName, BufferedReader reader)  throws IOException {
+        private final String fileName;
+        private final ByteBuffer content;
+        private final int[] lineStarts;
+        private final int lineCount;
+        private final File mappedFile;
+        private final long mappedLength;
+        private final long mappedModified;
+
+        SourceCode(String fileName, ByteBuffer content, File mappedFile) {
             this.fileName = fileName;
-            try {
-                String line = reader.readLine();
-                while (line != null) {
-                    sourceLines.add(line);
-                    line = reader.readLine();
+            this.content = content;
+            this.mappedFile = mappedFile;
+            this.mappedLength = (mappedFile == null) ? 0 : mappedFile.length();
+            this.mappedModified = (mappedFile == null) ? 0 : mappedFile.lastModified();
+
+            /*
+             * A single pass over the bytes. Line terminators are the
+             * same as for BufferedReader.readLine(): '\n', '\r' or "\r\n".
+             */
+            int limit = content.limit();
+            int[] starts = new int[Math.max(16, limit / 32)];
+            int count = 0;
+            int pos = 0;
+            while (pos < limit) {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                }
+                starts[count++] = pos;
+                while (pos < limit) {
+                    byte b = content.get(pos++);
+                    if (b == '\n') {
+                        break;
+                    }
+                    if (b == '\r') {
+                        if (pos < limit && content.get(pos) == '\n') {
+                            pos++;
+                        }
+                        break;
+                    }
                 }
-            } finally {
-                reader.close();
             }
+            this.lineStarts = Arrays.copyOf(starts, count);
+            this.lineCount = count;
         }
 
         String fileName() {
             return fileName;
         }
 
+        /**
+         * @return true if this maps a file that has changed since.
+         */
+        boolean isStale() {
+            return mappedFile != null &&
+                   (mappedFile.length() != mappedLength ||
+                    mappedFile.lastModified() != mappedModified);
+        }
+
+        /**
+         * @return the number of bytes this entry accounts for in the cache.
+         */
+        long size() {
+            return content.capacity() + 4L * lineStarts.length;
+        }
+
         String sourceLine(int number) {
-            int index = number - 1; // list is 0-indexed
-            if (index >= sourceLines.size()) {
+            int index = number - 1; // lines are 0-indexed
+            if (index < 0 || index >= lineCount) {
                 return null;
-            } else {
-                return sourceLines.get(index);
             }
+            int start = lineStarts[index];
+            int end = (index + 1 < lineCount) ? lineStarts[index + 1] : content.limit();
+            if (end > start && content.get(end - 1) == '\n') {
+                end--;
+            }
+            if (end > start && content.get(end - 1) == '\r') {
+                end--;
+            }
+            byte[] bytes = new byte[end - start];
+            content.get(start, bytes);
+            return new String(bytes, Charset.defaultCharset());
         }
     }
 }
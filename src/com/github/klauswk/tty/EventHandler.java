@@ -40,6 +40,11 @@ import com.sun.jdi.request.EventRequest;
 import com.sun.jdi.request.EventRequestManager;
 import com.sun.jdi.request.ThreadDeathRequest;
 
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
 public class EventHandler implements Runnable {
 
     EventNotifier notifier;
@@ -69,20 +74,19 @@ public class EventHandler implements Runnable {
     @Override
     public void run() {
         EventQueue queue = Env.vm().eventQueue();
+        boolean threaded = Env.threadedEvents();
         while (connected) {
             try {
                 EventSet eventSet = queue.remove();
-                boolean resumeStoppedApp = false;
-                EventIterator it = eventSet.eventIterator();
-                while (it.hasNext()) {
-                    resumeStoppedApp |= !handleEvent(it.nextEvent());
+                ThreadReference thread = null;
+                if (threaded &&
+                    eventSet.suspendPolicy() == EventRequest.SUSPEND_EVENT_THREAD) {
+                    thread = eventThread(eventSet.iterator().next());
                 }
-
-                if (resumeStoppedApp) {
-                    eventSet.resume();
-                } else if (eventSet.suspendPolicy() == EventRequest.SUSPEND_ALL) {
-                    setCurrentThread(eventSet);
-                    notifier.vmInterrupted();
+                if (thread != null) {
+                    dispatch(thread, eventSet);
+                } else {
+                    handleEventSet(eventSet);
                 }
             } catch (InterruptedException exc) {
                 // Do nothing. Any changes will be seen at top of loop.
@@ -97,9 +101,123 @@ public class EventHandler implements Runnable {
         }
     }
 
+    private void handleEventSet(EventSet eventSet) {
+        boolean resumeStoppedApp = false;
+        String output = null;
+
+        /*
+         * What the notifier prints is captured and handed to
+         * EventOutput, so the set can be resumed without
+         * waiting for the terminal.
+         */
+        MessageOutput.startCapture();
+        try {
+            EventIterator it = eventSet.eventIterator();
+            while (it.hasNext()) {
+                resumeStoppedApp |= !handleEvent(it.nextEvent());
+            }
+            output = MessageOutput.endCapture();
+        } finally {
+            if (output == null) {
+                // Show what was printed before the failure.
+                EventOutput.render(MessageOutput.endCapture(), false);
+            }
+        }
+
+        if (resumeStoppedApp) {
+            resumed(eventSet);
+            eventSet.resume();
+            EventOutput.render(output, true);
+        } else {
+            synchronized (stopLock) {
+                EventOutput.render(output, false);
+                if (eventSet.suspendPolicy() == EventRequest.SUSPEND_ALL) {
+                    EventOutput.flush();
+                    setCurrentThread(eventSet);
+                    notifier.vmInterrupted();
+                }
+            }
+        }
+    }
+
+    /*
+     * Held while a set that stays stopped is reported and made current.
+     * With -threadedevents, sets of different threads are handled
+     * concurrently, but the current thread and the prompt are shared:
+     * one stop is reported at a time, and the last one reported is
+     * the current thread.
+     */
+    private final Object stopLock = new Object();
+
+    /*
+     * Event sets that suspend only their thread, queued per target
+     * thread. Each queue is drained by a virtual thread of its own, so
+     * sets of one thread are handled in order and those of different
+     * threads concurrently. The virtual thread ends when its queue is
+     * empty and a new one starts with the next set.
+     */
+    private final Map<ThreadReference, ThreadEventSets> threadEventSets =
+        new ConcurrentHashMap<>();
+
+    private void dispatch(ThreadReference thread, EventSet eventSet) {
+        threadEventSets.compute(thread, (t, sets) -> {
+            if (sets == null) {
+                sets = new ThreadEventSets(t);
+                sets.pending.add(eventSet);
+                Thread.ofVirtual()
+                      .name("event-handler-" + t.uniqueID())
+                      .start(sets);
+            } else {
+                sets.pending.add(eventSet);
+            }
+            return sets;
+        });
+    }
+
+    private final class ThreadEventSets implements Runnable {
+        final ThreadReference thread;
+        final Queue<EventSet> pending = new ConcurrentLinkedQueue<>();
+
+        ThreadEventSets(ThreadReference thread) {
+            this.thread = thread;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                EventSet eventSet = pending.poll();
+                if (eventSet == null) {
+                    // Retire, unless dispatch() added a set meanwhile.
+                    if (threadEventSets.computeIfPresent(thread,
+                            (t, sets) -> sets.pending.isEmpty() ? null : sets) == null) {
+                        return;
+                    }
+                    continue;
+                }
+                try {
+                    handleEventSet(eventSet);
+                } catch (VMDisconnectedException e) {
+                    // The event handler thread sees it too, and shuts down.
+                } catch (RuntimeException e) {
+                    MessageOutput.printException("Internal exception:", e);
+                }
+            }
+        }
+    }
+
     private boolean handleEvent(Event event) {
         notifier.receivedEvent(event);
 
+        if (Env.loadedClasses().update(event)) {
+            if (event instanceof ClassPrepareEvent) {
+                Env.specList.resolveLate((ClassPrepareEvent)event);
+            }
+            return false;
+        }
+        if (VThreadSampler.update(event)) {
+            return false;
+        }
+
         /*
          * See if the event thread is a vthread that we need to start tracking.
          */
@@ -170,6 +288,8 @@ public class EventHandler implements Runnable {
              * Inform jdb command line processor that jdb is being shutdown. JDK-8154144.
              */
             ((TTY)notifier).setShuttingDown(true);
+            EventOutput.render(MessageOutput.endCapture(), false);
+            EventOutput.flush();
             Env.shutdown(shutdownMessageKey);
             return false;
         } else {
@@ -201,6 +321,28 @@ public class EventHandler implements Runnable {
         }
     }
 
+    /*
+     * Note which threads resuming 'eventSet' lets run: all of them,
+     * only the event thread, or none.
+     */
+    private void resumed(EventSet eventSet) {
+        switch (eventSet.suspendPolicy()) {
+            case EventRequest.SUSPEND_ALL:
+                ThreadInfo.resumed();
+                break;
+            case EventRequest.SUSPEND_EVENT_THREAD:
+                ThreadReference thread = eventThread(eventSet.iterator().next());
+                if (thread != null) {
+                    ThreadInfo.resumed(thread);
+                } else {
+                    ThreadInfo.resumed();
+                }
+                break;
+            default:
+                break;  // nothing was suspended
+        }
+    }
+
     private ThreadReference eventThread(Event event) {
         if (event instanceof ClassPrepareEvent) {
             return ((ClassPrepareEvent)event).thread();
@@ -245,18 +387,31 @@ public class EventHandler implements Runnable {
 
     private boolean breakpointEvent(Event event)  {
         BreakpointEvent be = (BreakpointEvent)event;
+        if (!BreakpointSpec.conditionHolds(be)) {
+            return false;
+        }
         notifier.breakpointEvent(be);
         return true;
     }
 
     private boolean methodEntryEvent(Event event)  {
         MethodEntryEvent me = (MethodEntryEvent)event;
+        MethodEventSink sink = MethodEventSink.sinkFor(me.request());
+        if (sink != null) {
+            sink.methodEntered(me.thread(), me.method());
+            return false;
+        }
         notifier.methodEntryEvent(me);
         return true;
     }
 
     private boolean methodExitEvent(Event event)  {
         MethodExitEvent me = (MethodExitEvent)event;
+        MethodEventSink sink = MethodEventSink.sinkFor(me.request());
+        if (sink != null) {
+            sink.methodExited(me.thread(), me.method());
+            return false;
+        }
         return notifier.methodExitEvent(me);
     }
 
@@ -300,6 +455,10 @@ public class EventHandler implements Runnable {
         ThreadDeathEvent tde = (ThreadDeathEvent)event;
         ThreadReference thread = tde.thread();
         ThreadInfo.removeThread(thread);
+        MethodLatency latency = MethodLatency.current();
+        if (latency != null) {
+            latency.threadDied(thread);
+        }
 
         if (!trackVthreads && thread.isVirtual()) {
             // Remove the ThreadDeathRequest used for this event since it was created
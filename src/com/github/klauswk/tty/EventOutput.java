@@ -0,0 +1,173 @@
+package com.github.klauswk.tty;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The rendering stage of event handling.
+ *
+ * The event handler captures what the notifier prints for an event set
+ * instead of writing it to the terminal, resumes the set, and hands the
+ * text to this class. A daemon thread writes it out in arrival order,
+ * so a slow terminal no longer keeps the debuggee suspended.
+ *
+ * The queue holds at most 'capacity' entries. When it is full, the
+ * BLOCK policy makes the handler wait for room, which in turn holds
+ * back event-thread suspended debuggee threads. The DROP policy
+ * instead discards the output of event sets that have already been
+ * resumed, and prints how many were lost once the queue has drained.
+ * Output of sets that stay suspended is never dropped.
+ */
+class EventOutput {
+
+    enum Policy {
+        BLOCK, DROP
+    }
+
+    /* The queue and its counts, guarded by 'lock'. */
+    private static final ReentrantLock lock = new ReentrantLock();
+    private static final Condition notEmpty = lock.newCondition();
+    private static final Condition notFull = lock.newCondition();
+    private static final Condition progress = lock.newCondition();
+    private static final ArrayDeque<String> queue = new ArrayDeque<>();
+    private static long accepted = 0;
+    private static long rendered = 0;
+    private static long dropped = 0;
+
+    private static volatile int capacity = 4096;
+    private static volatile Policy policy = Policy.BLOCK;
+    private static volatile Thread renderer;
+
+    /**
+     * Queue 'text' for printing. 'droppable' tells whether the DROP
+     * policy may discard it.
+     */
+    static void render(String text, boolean droppable) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        renderer();
+        lock.lock();
+        try {
+            while (queue.size() >= capacity) {
+                if (droppable && policy == Policy.DROP) {
+                    dropped++;
+                    return;
+                }
+                notFull.awaitUninterruptibly();
+            }
+            queue.add(text);
+            accepted++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until everything queued so far has been printed, so that
+     * what follows (a prompt, a command's output) comes after it.
+     */
+    static void flush() {
+        lock.lock();
+        try {
+            long target = accepted;
+            while (rendered < target) {
+                progress.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static Policy policy() {
+        return policy;
+    }
+
+    static void setPolicy(Policy newPolicy) {
+        policy = newPolicy;
+    }
+
+    static int capacity() {
+        return capacity;
+    }
+
+    static void setCapacity(int newCapacity) {
+        lock.lock();
+        try {
+            capacity = newCapacity;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static int queued() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Thread renderer() {
+        Thread thread = renderer;
+        if (thread == null) {
+            synchronized (EventOutput.class) {
+                thread = renderer;
+                if (thread == null) {
+                    thread = new Thread(EventOutput::renderLoop, "event-renderer");
+                    thread.setDaemon(true);
+                    thread.start();
+                    renderer = thread;
+                }
+            }
+        }
+        return thread;
+    }
+
+    private static void renderLoop() {
+        while (true) {
+            String text;
+            long lost = 0;
+            lock.lock();
+            try {
+                text = queue.poll();
+                if (text == null) {
+                    lost = dropped;
+                    dropped = 0;
+                } else {
+                    notFull.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (text == null) {
+                // Caught up; say what could not be queued meanwhile.
+                if (lost > 0) {
+                    MessageOutput.println("Event output dropped", new Object [] {lost});
+                }
+                MessageOutput.flush();
+                lock.lock();
+                try {
+                    while (queue.isEmpty()) {
+                        notEmpty.awaitUninterruptibly();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                continue;
+            }
+            MessageOutput.printDirect(text);
+            lock.lock();
+            try {
+                rendered++;
+                progress.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -40,6 +40,9 @@ import com.sun.jdi.request.ExceptionRequest;
 import com.sun.jdi.request.ClassPrepareRequest;
 import com.sun.jdi.event.ClassPrepareEvent;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 abstract class EventRequestSpec {
 
@@ -50,6 +53,12 @@ abstract class EventRequestSpec {
     EventRequest resolved = null;
     ClassPrepareRequest prepareRequest = null;
 
+    /*
+     * The types already resolved against. A type can be reported both
+     * by this spec's prepare request and by the loaded class registry.
+     */
+    private final Set<ReferenceType> resolvedTypes = new HashSet<ReferenceType>();
+
     EventRequestSpec(ReferenceTypeSpec refSpec) {
         this.refSpec = refSpec;
     }
@@ -68,33 +77,90 @@ abstract class EventRequestSpec {
     synchronized EventRequest resolve(ClassPrepareEvent event) throws Exception {
         if ((resolved == null) &&
             (prepareRequest != null) &&
-            prepareRequest.equals(event.request())) {
+            (prepareRequest.equals(event.request()) ||
+             (isUniqueClass() && refSpec.matches(event.referenceType())))) {
+            resolvePrepared(event.referenceType());
+        }
+        return resolved;
+    }
 
-            resolved = resolveEventRequest(event.referenceType());
-            prepareRequest.disable();
-            Env.vm().eventRequestManager().deleteEventRequest(prepareRequest);
-            prepareRequest = null;
+    /**
+     * Like resolve(ClassPrepareEvent), for a class the loaded class
+     * registry has just learned about. The class may have been prepared
+     * before this spec's prepare request was enabled, yet after the
+     * registry was last searched for it, and would then be missed.
+     */
+    synchronized EventRequest resolveLate(ReferenceType refType) throws Exception {
+        if ((resolved == null) &&
+            (prepareRequest != null) &&
+            refSpec.matches(refType)) {
+            resolvePrepared(refType);
+        }
+        return resolved;
+    }
 
-            if (refSpec instanceof PatternReferenceTypeSpec) {
-                PatternReferenceTypeSpec prs = (PatternReferenceTypeSpec)refSpec;
-                if (! prs.isUnique()){
-                    /*
-                     * Class pattern event requests are never
-                     * considered "resolved", since future class loads
-                     * might also match.
-                     * Create and enable a new ClassPrepareRequest to
-                     * keep trying to resolve.
-                     */
-                    resolved = null;
-                    prepareRequest = refSpec.createPrepareRequest();
-                    prepareRequest.enable();
-                }
+    private void resolvePrepared(ReferenceType refType) throws Exception {
+        if (isUniqueClass()) {
+            try {
+                resolved = resolveOnce(refType);
+            } finally {
+                // A failure would only repeat on the next event.
+                stopWaitingForPrepare();
+            }
+        } else {
+            /*
+             * Class pattern event requests are never
+             * considered "resolved", since future class loads
+             * might also match. Keep waiting on the same
+             * ClassPrepareRequest.
+             */
+            try {
+                resolveOnce(refType);
+            } catch (Exception e) {
+                stopWaitingForPrepare();
+                throw e;
             }
         }
-        return resolved;
+    }
+
+    private EventRequest resolveOnce(ReferenceType refType) throws Exception {
+        if (resolvedTypes.contains(refType)) {
+            return resolved;
+        }
+        EventRequest request = resolveEventRequest(refType);
+        resolvedTypes.add(refType);
+        return request;
+    }
+
+    /*
+     * Wait on the ClassPrepareRequest shared by the specs of this
+     * class pattern.
+     */
+    private void waitForPrepare() {
+        prepareRequest = Env.specList.waitForPrepare(this);
+    }
+
+    private void stopWaitingForPrepare() {
+        if (prepareRequest != null) {
+            Env.specList.stopWaitingForPrepare(this, prepareRequest);
+            prepareRequest = null;
+        }
+    }
+
+    /**
+     * @return the class this spec names, if it names exactly one.
+     */
+    String uniqueClassName() {
+        return isUniqueClass() ? refSpec.toString() : null;
+    }
+
+    private boolean isUniqueClass() {
+        return (refSpec instanceof PatternReferenceTypeSpec) &&
+               ((PatternReferenceTypeSpec)refSpec).isUnique();
     }
 
     synchronized void remove() {
+        stopWaitingForPrepare();
         if (isResolved()) {
             Env.vm().eventRequestManager().deleteEventRequest(resolved());
         }
@@ -120,9 +186,53 @@ abstract class EventRequestSpec {
     }
 
     private EventRequest resolveAgainstPreparedClasses() throws Exception {
-        for (ReferenceType refType : Env.vm().allClasses()) {
-            if (refType.isPrepared() && refSpec.matches(refType)) {
-                resolved = resolveEventRequest(refType);
+        for (ReferenceType refType : refSpec.loadedMatches()) {
+            if (refType.isPrepared()) {
+                resolved = resolveOnce(refType);
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * @return the loaded types matching 'refSpec' that are prepared,
+     * and so can be resolved against.
+     */
+    static List<ReferenceType> preparedMatches(ReferenceTypeSpec refSpec) {
+        List<ReferenceType> prepared = new ArrayList<ReferenceType>();
+        for (ReferenceType refType : refSpec.loadedMatches()) {
+            if (refType.isPrepared()) {
+                prepared.add(refType);
+            }
+        }
+        return prepared;
+    }
+
+    /**
+     * Like resolveEagerly(), but against 'prepared', matches of this
+     * spec computed once for every spec sharing the same refSpec. The
+     * prepare request is only created when they don't resolve it.
+     */
+    synchronized EventRequest resolveAgainst(List<ReferenceType> prepared) throws Exception {
+        if (resolved == null) {
+            for (ReferenceType refType : prepared) {
+                resolved = resolveOnce(refType);
+            }
+        }
+        boolean pattern = (refSpec instanceof PatternReferenceTypeSpec) &&
+                          !((PatternReferenceTypeSpec)refSpec).isUnique();
+        if (pattern) {
+            // Never considered resolved, see resolveEagerly().
+            resolved = null;
+        }
+        if (resolved == null && prepareRequest == null) {
+            waitForPrepare();
+            if (!pattern) {
+                // The class may have been prepared since 'prepared' was taken.
+                resolveAgainstPreparedClasses();
+                if (resolved != null) {
+                    stopWaitingForPrepare();
+                }
             }
         }
         return resolved;
@@ -135,15 +245,12 @@ abstract class EventRequestSpec {
                  * Not resolved.  Schedule a prepare request so we
                  * can resolve later.
                  */
-                prepareRequest = refSpec.createPrepareRequest();
-                prepareRequest.enable();
+                waitForPrepare();
 
                 // Try to resolve in case the class is already loaded.
                 resolveAgainstPreparedClasses();
                 if (resolved != null) {
-                    prepareRequest.disable();
-                    Env.vm().eventRequestManager().deleteEventRequest(prepareRequest);
-                    prepareRequest = null;
+                    stopWaitingForPrepare();
                 }
             }
             if (refSpec instanceof PatternReferenceTypeSpec) {
@@ -158,8 +265,7 @@ abstract class EventRequestSpec {
                      */
                     resolved = null;
                     if (prepareRequest == null) {
-                        prepareRequest = refSpec.createPrepareRequest();
-                        prepareRequest.enable();
+                        waitForPrepare();
                     }
                 }
             }
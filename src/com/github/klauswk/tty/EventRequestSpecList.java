@@ -34,13 +34,19 @@
 
 package com.github.klauswk.tty;
 
+import com.sun.jdi.request.ClassPrepareRequest;
 import com.sun.jdi.request.EventRequest;
 import com.sun.jdi.event.ClassPrepareEvent;
+import com.sun.jdi.ReferenceType;
 import com.sun.jdi.ThreadReference;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 class EventRequestSpecList {
 
@@ -52,43 +58,226 @@ class EventRequestSpecList {
     private List<EventRequestSpec> eventRequestSpecs = Collections.synchronizedList(
                                                   new ArrayList<EventRequestSpec>());
 
+    /*
+     * Unresolved specs by the ClassPrepareRequest they wait on, and
+     * those naming a single class also by that name, so that a class
+     * prepare only visits the specs it can resolve.
+     */
+    private final Map<EventRequest, Set<EventRequestSpec>> waitingByRequest =
+        new HashMap<EventRequest, Set<EventRequestSpec>>();
+    private final Map<String, Set<EventRequestSpec>> waitingByClassName =
+        new HashMap<String, Set<EventRequestSpec>>();
+
+    /*
+     * One ClassPrepareRequest per distinct class pattern, shared by
+     * every spec waiting on that pattern and deleted with the last one.
+     */
+    private static final class SharedPrepareRequest {
+        final ClassPrepareRequest request;
+        int users = 0;
+
+        SharedPrepareRequest(ClassPrepareRequest request) {
+            this.request = request;
+        }
+    }
+
+    private final Map<ReferenceTypeSpec, SharedPrepareRequest> prepareRequests =
+        new HashMap<ReferenceTypeSpec, SharedPrepareRequest>();
+
     EventRequestSpecList() {
     }
 
+    /**
+     * Register 'spec' as waiting for its class to be prepared.
+     * @return the prepare request whose events will resolve it.
+     */
+    ClassPrepareRequest waitForPrepare(EventRequestSpec spec) {
+        ClassPrepareRequest prepareRequest;
+        synchronized (prepareRequests) {
+            SharedPrepareRequest shared = prepareRequests.get(spec.refSpec);
+            if (shared == null) {
+                shared = new SharedPrepareRequest(spec.refSpec.createPrepareRequest());
+                shared.request.enable();
+                prepareRequests.put(spec.refSpec, shared);
+            }
+            shared.users++;
+            prepareRequest = shared.request;
+        }
+        synchronized (waitingByRequest) {
+            waitingByRequest.computeIfAbsent(prepareRequest, r -> new LinkedHashSet<>())
+                            .add(spec);
+            String className = spec.uniqueClassName();
+            if (className != null) {
+                waitingByClassName.computeIfAbsent(className, n -> new LinkedHashSet<>())
+                                  .add(spec);
+            }
+        }
+        return prepareRequest;
+    }
+
+    void stopWaitingForPrepare(EventRequestSpec spec, ClassPrepareRequest prepareRequest) {
+        synchronized (waitingByRequest) {
+            removeWaiting(waitingByRequest, prepareRequest, spec);
+            String className = spec.uniqueClassName();
+            if (className != null) {
+                removeWaiting(waitingByClassName, className, spec);
+            }
+        }
+        synchronized (prepareRequests) {
+            SharedPrepareRequest shared = prepareRequests.get(spec.refSpec);
+            if (shared != null && shared.request == prepareRequest && --shared.users == 0) {
+                prepareRequests.remove(spec.refSpec);
+                prepareRequest.disable();
+                Env.vm().eventRequestManager().deleteEventRequest(prepareRequest);
+            }
+        }
+    }
+
+    private static <K> void removeWaiting(Map<K, Set<EventRequestSpec>> map,
+                                          K key, EventRequestSpec spec) {
+        Set<EventRequestSpec> specs = map.get(key);
+        if (specs != null) {
+            specs.remove(spec);
+            if (specs.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+
     /**
      * Resolve all deferred eventRequests waiting for 'refType'.
      * @return true if it completes successfully, false on error.
      */
     boolean resolve(ClassPrepareEvent event) {
+        /*
+         * Only the lookup is done under the lock; creating the event
+         * requests goes to the VM, and each spec synchronizes on itself.
+         */
+        List<EventRequestSpec> waiting = new ArrayList<EventRequestSpec>();
+        synchronized (waitingByRequest) {
+            Set<EventRequestSpec> specs = waitingByRequest.get(event.request());
+            if (specs != null) {
+                waiting.addAll(specs);
+            }
+            specs = waitingByClassName.get(event.referenceType().name());
+            if (specs != null) {
+                for (EventRequestSpec spec : specs) {
+                    if (!waiting.contains(spec)) {
+                        waiting.add(spec);
+                    }
+                }
+            }
+        }
+
         boolean failure = false;
-        synchronized(eventRequestSpecs) {
-            for (EventRequestSpec spec : eventRequestSpecs) {
-                if (!spec.isResolved()) {
-                    try {
-                        EventRequest eventRequest = spec.resolve(event);
-                        if (eventRequest != null) {
-                            MessageOutput.println("Set deferred", spec.toString());
-                        }
-                    } catch (Exception e) {
-                        MessageOutput.println("Unable to set deferred",
-                                              new Object [] {spec.toString(),
-                                                             spec.errorMessageFor(e)});
-                        failure = true;
+        for (EventRequestSpec spec : waiting) {
+            if (!spec.isResolved()) {
+                try {
+                    EventRequest eventRequest = spec.resolve(event);
+                    if (eventRequest != null) {
+                        MessageOutput.println("Set deferred", spec.toString());
                     }
+                } catch (Exception e) {
+                    MessageOutput.println("Unable to set deferred",
+                                          new Object [] {spec.toString(),
+                                                         spec.errorMessageFor(e)});
+                    failure = true;
                 }
             }
         }
         return !failure;
     }
 
+    /**
+     * Resolve the deferred eventRequests matching a class the loaded
+     * class registry has just learned about. The class may have been
+     * prepared before their prepare requests were enabled, and then
+     * missed by the registry lookup made when they were.
+     */
+    void resolveLate(ClassPrepareEvent event) {
+        ReferenceType refType = event.referenceType();
+        List<EventRequestSpec> waiting = new ArrayList<EventRequestSpec>();
+        synchronized (waitingByRequest) {
+            for (Set<EventRequestSpec> specs : waitingByRequest.values()) {
+                for (EventRequestSpec spec : specs) {
+                    if (spec.refSpec.matches(refType)) {
+                        waiting.add(spec);
+                    }
+                }
+            }
+        }
+
+        for (EventRequestSpec spec : waiting) {
+            if (!spec.isResolved()) {
+                try {
+                    EventRequest eventRequest = spec.resolveLate(refType);
+                    if (eventRequest != null) {
+                        MessageOutput.println("Set deferred", spec.toString());
+                    }
+                } catch (Exception e) {
+                    MessageOutput.println("Unable to set deferred",
+                                          new Object [] {spec.toString(),
+                                                         spec.errorMessageFor(e)});
+                }
+            }
+        }
+    }
+
+    private record Outcome(EventRequestSpec spec, EventRequest request, Exception error) {
+    }
+
+    /**
+     * Resolve every unresolved spec against the classes already
+     * prepared, matching each distinct class pattern only once, and
+     * report the results together.
+     */
     void resolveAll() {
-        for (EventRequestSpec spec : eventRequestSpecs) {
+        Map<ReferenceTypeSpec, List<ReferenceType>> prepared =
+            new HashMap<ReferenceTypeSpec, List<ReferenceType>>();
+        List<Outcome> outcomes = new ArrayList<Outcome>();
+        int set = 0;
+        int failed = 0;
+        for (EventRequestSpec spec : eventRequestSpecs()) {
+            if (spec.isResolved()) {
+                continue;
+            }
             try {
-                EventRequest eventRequest = spec.resolveEagerly();
+                List<ReferenceType> matches = prepared.get(spec.refSpec);
+                if (matches == null) {
+                    matches = EventRequestSpec.preparedMatches(spec.refSpec);
+                    prepared.put(spec.refSpec, matches);
+                }
+                EventRequest eventRequest = spec.resolveAgainst(matches);
+                outcomes.add(new Outcome(spec, eventRequest, null));
                 if (eventRequest != null) {
-                    MessageOutput.println("Set deferred", spec.toString());
+                    set++;
                 }
+            } catch (VMNotConnectedException e) {
+                // Another resolve will be attempted when the VM is started.
+                return;
             } catch (Exception e) {
+                outcomes.add(new Outcome(spec, null, e));
+                failed++;
+            }
+        }
+        if (outcomes.isEmpty()) {
+            return;
+        }
+
+        MessageOutput.println("Resolved deferred requests",
+                              new Object [] {set,
+                                             outcomes.size() - set - failed,
+                                             failed});
+        for (Outcome outcome : outcomes) {
+            EventRequestSpec spec = outcome.spec();
+            if (outcome.error() != null) {
+                MessageOutput.println("Unable to set deferred",
+                                      new Object [] {spec.toString(),
+                                                     spec.errorMessageFor(outcome.error())});
+            } else if (outcome.request() != null) {
+                MessageOutput.println("Set deferred", spec.toString());
+            } else {
+                MessageOutput.println("Still deferred", spec.toString());
             }
         }
     }
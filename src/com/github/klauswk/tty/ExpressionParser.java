@@ -30,52 +30,310 @@ import com.sun.jdi.*;
 import java.util.Stack;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class ExpressionParser implements ExpressionParserConstants {
 
-  Stack<LValue> stack = new Stack<>();
-  VirtualMachine vm = null;
-  GetFrame frameGetter = null;
-  private static GetFrame lastFrameGetter;
-  private static LValue lastLValue;
+  Stack<Node> stack = new Stack<Node>();
+
+  /* Whether the expression parsed calls a method or constructor. */
+  boolean invokes = false;
+
+  /*
+   * Trees of recently evaluated expressions, by their text, least
+   * recently used first. A tree holds no frame or value of its own, so
+   * it can be evaluated again in any frame, by any thread.
+   */
+  private static final int PARSED_CACHE_SIZE = 256;
+  private static final Map<String, Node> parsedCache =
+      new LinkedHashMap<String, Node>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Node> eldest) {
+              return size() > PARSED_CACHE_SIZE;
+          }
+      };
 
-  LValue peek() {
+  Node peek() {
     return stack.peek();
   }
 
-  LValue pop() {
+  Node pop() {
     return stack.pop();
   }
 
-  void push(LValue lval) {
-    stack.push(lval);
+  void push(Node node) {
+    stack.push(node);
+  }
+
+  /**
+   * A parsed expression, or part of one. The parser builds a tree of
+   * these instead of evaluating as it reads; evaluating the tree does
+   * what the parser did, against the frame of the time, so one parse
+   * serves any number of evaluations.
+   */
+  public interface Node {
+        LValue evaluate(VirtualMachine vm, GetFrame frameGetter) throws ParseException;
+  }
+
+  static List<Value> values(List<Node> nodes, VirtualMachine vm,
+                            GetFrame frameGetter) throws ParseException {
+        List<Value> values = new ArrayList<Value>(nodes.size());
+        for (Node node : nodes) {
+            values.add(node.evaluate(vm, frameGetter).interiorGetValue());
+        }
+        return values;
+  }
+
+  /*
+   * The nodes the grammar's actions build. Operands are evaluated
+   * left to right, as they were when the parser evaluated directly.
+   */
+
+  static Node assignment(final Node target, final Node value) {
+        return new Node() {
+            public LValue evaluate(VirtualMachine vm, GetFrame frameGetter) throws ParseException {
+                LValue lval = target.evaluate(vm, frameGetter);
+                LValue exprVal = value.evaluate(vm, frameGetter);
+                lval.setValue(exprVal);
+                return exprVal;
+            }
+        };
+  }
+
+  static Node conditional(final Node condition, final Node trueBranch, final Node falseBranch) {
+        return new Node() {
+            public LValue evaluate(VirtualMachine vm, GetFrame frameGetter) throws ParseException {
+                Value cond = condition.evaluate(vm, frameGetter).interiorGetValue();
+                if (cond instanceof BooleanValue) {
+                    return (((BooleanValue)cond).booleanValue()?
+                            trueBranch : falseBranch).evaluate(vm, frameGetter);
+                } else {
+                    throw new ParseException("Condition must be boolean");
+                }
+            }
+        };
+  }
+
+  static Node booleanOperation(final Token op, final Node left, final Node right) {
+        return new Node() {
+            public LValue evaluate(VirtualMachine vm, GetFrame frameGetter) throws ParseException {
+                return LValue.booleanOperation(vm, op,
+                                               left.evaluate(vm, frameGetter),
+                                               right.evaluate(vm, frameGetter));
+            }
+        };
+  }
+
+  static Node operation(final Token op, final Node left, final Node right) {
+        return new Node() {
+            public LValue evaluate(VirtualMachine vm, GetFrame frameGetter) throws ParseException {
+                return LValue.operation(vm, op,
+                                        left.evaluate(vm, frameGetter),
+                                        right.evaluate(vm, frameGetter),
+                                        frameGetter);
+            }
+        };
+  }
+
+  static Node operation(final Token op, final Node operand) {
+        return new Node() {
+            public LValue evaluate(VirtualMachine vm, GetFrame frameGetter) throws ParseException {
+                return LValue.operation(vm, op, operand.evaluate(vm, frameGetter), frameGetter);
+            }
+        };
+  }
+
+  static Node name(final String name) {
+        return new Node() {
+            public LValue evaluate(VirtualMachine vm, GetFrame frameGetter) throws ParseException {
+                return LValue.makeName(vm, frameGetter, name);
+            }
+        };
+  }
+
+  static Node thisObject(final Token token) {
+        return new Node() {
+            public LValue evaluate(VirtualMachine vm, GetFrame frameGetter) throws ParseException {
+                return LValue.makeThisObject(vm, frameGetter, token);
+            }
+        };
+  }
+
+  static Node arrayElement(final Node array, final Node index) {
+        return new Node() {
+            public LValue evaluate(VirtualMachine vm, GetFrame frameGetter) throws ParseException {
+                LValue lval = array.evaluate(vm, frameGetter);
+                return lval.arrayElementLValue(index.evaluate(vm, frameGetter));
+            }
+        };
+  }
+
+  static Node member(final Node object, final String member) {
+        return new Node() {
+            public LValue evaluate(VirtualMachine vm, GetFrame frameGetter) throws ParseException {
+                return object.evaluate(vm, frameGetter).memberLValue(frameGetter, member);
+            }
+        };
+  }
+
+  static Node invocation(final Node method, final List<Node> arguments) {
+        return new Node() {
+            public LValue evaluate(VirtualMachine vm, GetFrame frameGetter) throws ParseException {
+                LValue lval = method.evaluate(vm, frameGetter);
+                lval.invokeWith(values(arguments, vm, frameGetter));
+                return lval;
+            }
+        };
   }
 
-  public static Value getMassagedValue() throws ParseException {
-        return lastLValue.getMassagedValue(lastFrameGetter);
+  static Node newObject(final String className, final List<Node> arguments) {
+        return new Node() {
+            public LValue evaluate(VirtualMachine vm, GetFrame frameGetter) throws ParseException {
+                return LValue.makeNewObject(vm, frameGetter, className,
+                                            values(arguments, vm, frameGetter));
+            }
+        };
+  }
+
+  /* A literal, made from its token. */
+  static Node literal(final Token token) {
+        return new Node() {
+            public LValue evaluate(VirtualMachine vm, GetFrame frameGetter) throws ParseException {
+                switch (token.kind) {
+                case INTEGER_LITERAL:
+                    return LValue.makeInteger(vm, token);
+                case FLOATING_POINT_LITERAL:
+                    return LValue.makeFloat(vm, token);
+                case CHARACTER_LITERAL:
+                    return LValue.makeCharacter(vm, token);
+                case STRING_LITERAL:
+                    return LValue.makeString(vm, token);
+                case TRUE:
+                case FALSE:
+                    return LValue.makeBoolean(vm, token);
+                default:
+                    return LValue.makeNull(vm, token);
+                }
+            }
+        };
   }
 
   public interface GetFrame {
         StackFrame get() throws IncompatibleThreadStateException;
   }
 
-  @SuppressWarnings("deprecation")
+  /**
+   * The frame getter of an evaluation that must not run code in the
+   * target VM, such as the implicit toString() of a concatenation.
+   */
+  public interface GetFrameWithoutInvocations extends GetFrame {
+  }
+
   public static Value evaluate(String expr, VirtualMachine vm,
                                GetFrame frameGetter) throws ParseException,
                                             InvocationException,
                                             InvalidTypeException,
                                             ClassNotLoadedException,
                                             IncompatibleThreadStateException {
-        // TODO StringBufferInputStream is deprecated.
-        java.io.InputStream in = new java.io.StringBufferInputStream(expr);
-        ExpressionParser parser = new ExpressionParser(in);
-        parser.vm = vm;
-        parser.frameGetter = frameGetter;
-        Value value = null;
+        return new Evaluation(vm, frameGetter).evaluate(expr);
+  }
+
+  /**
+   * The evaluation of an expression: the VM and frame it is evaluated
+   * in, and its result. Each caller evaluates with an Evaluation of its
+   * own, so evaluations on different threads do not see each other's
+   * results.
+   */
+  public static final class Evaluation {
+        private final VirtualMachine vm;
+        private final GetFrame frameGetter;
+        private LValue result = null;
+        private Value value = null;
+
+        public Evaluation(VirtualMachine vm, GetFrame frameGetter) {
+            this.vm = vm;
+            this.frameGetter = frameGetter;
+        }
+
+        public Value evaluate(String expr) throws ParseException,
+                                                  InvocationException,
+                                                  InvalidTypeException,
+                                                  ClassNotLoadedException,
+                                                  IncompatibleThreadStateException {
+            return evaluate(parseCached(expr));
+        }
+
+        public Value evaluate(Node node) throws ParseException,
+                                                InvocationException,
+                                                InvalidTypeException,
+                                                ClassNotLoadedException,
+                                                IncompatibleThreadStateException {
+            result = null;
+            value = null;
+            LValue lval = node.evaluate(vm, frameGetter);
+            value = lval.getValue();
+            result = lval;
+            return value;
+        }
+
+        /**
+         * The value of the last expression evaluated, or null if there
+         * was none or it failed.
+         */
+        public Value value() {
+            return value;
+        }
+
+        /**
+         * The value of the last expression evaluated, as it is shown:
+         * objects are replaced by their toString() in the target VM.
+         */
+        public Value getMassagedValue() throws ParseException {
+            if (result == null) {
+                throw new ParseException("No expression evaluated");
+            }
+            return result.getMassagedValue(frameGetter);
+        }
+  }
+
+  /**
+   * Parse 'expr' without evaluating it.
+   */
+  public static Node parse(String expr) throws ParseException {
+        return parse(expr, true);
+  }
+
+  /**
+   * Parse 'expr' without evaluating it.
+   * @return null if 'expr' calls a method or constructor and
+   * 'invocationsAllowed' is false.
+   */
+  public static Node parse(String expr, boolean invocationsAllowed) throws ParseException {
+        ExpressionParser parser = new ExpressionParser(new java.io.StringReader(expr));
         parser.Expression();
-        lastFrameGetter = frameGetter;
-        lastLValue = parser.pop();
-        return lastLValue.getValue();
+        if (parser.invokes && !invocationsAllowed) {
+            return null;
+        }
+        return parser.pop();
+  }
+
+  /**
+   * Parse 'expr', or find the tree it was parsed to last time.
+   */
+  static Node parseCached(String expr) throws ParseException {
+        synchronized (parsedCache) {
+            Node node = parsedCache.get(expr);
+            if (node != null) {
+                return node;
+            }
+        }
+        // Expressions that do not parse are not kept.
+        Node node = parse(expr);
+        synchronized (parsedCache) {
+            parsedCache.put(expr, node);
+        }
+        return node;
   }
 
   public static void main(String args[]) {
@@ -186,7 +444,7 @@ public class ExpressionParser implements ExpressionParserConstants {
   }
 
   final public String Name() throws ParseException {
-    StringBuilder sb = new StringBuilder();
+ StringBuilder sb = new StringBuilder();
     jj_consume_token(IDENTIFIER);
                  sb.append(token);
     label_2:
@@ -261,7 +519,7 @@ public class ExpressionParser implements ExpressionParserConstants {
     PrimaryExpression();
     AssignmentOperator();
     Expression();
-          LValue exprVal = pop(); pop().setValue(exprVal); push(exprVal);
+          Node value = pop(); push(assignment(pop(), value));
   }
 
   final public void AssignmentOperator() throws ParseException {
@@ -317,14 +575,8 @@ public class ExpressionParser implements ExpressionParserConstants {
       Expression();
       jj_consume_token(COLON);
       ConditionalExpression();
-                  LValue falseBranch = pop(); LValue trueBranch = pop();
-                  Value cond = pop().interiorGetValue();
-                  if (cond instanceof BooleanValue) {
-                        push(((BooleanValue)cond).booleanValue()?
-                                        trueBranch : falseBranch);
-                  } else {
-                        {if (true) throw new ParseException("Condition must be boolean");}
-                  }
+                  Node falseBranch = pop(); Node trueBranch = pop();
+                  push(conditional(pop(), trueBranch, falseBranch));
       break;
     default:
       jj_la1[6] = jj_gen;
@@ -449,8 +701,8 @@ public class ExpressionParser implements ExpressionParserConstants {
         throw new ParseException();
       }
       InstanceOfExpression();
-                  LValue left = pop();
-                  push( LValue.booleanOperation(vm, tok, pop(), left) );
+                  Node right = pop();
+                  push(booleanOperation(tok, pop(), right));
     }
   }
 
@@ -503,8 +755,8 @@ public class ExpressionParser implements ExpressionParserConstants {
         throw new ParseException();
       }
       ShiftExpression();
-                  LValue left = pop();
-                  push( LValue.booleanOperation(vm, tok, pop(), left) );
+                  Node right = pop();
+                  push(booleanOperation(tok, pop(), right));
     }
   }
 
@@ -569,8 +821,8 @@ public class ExpressionParser implements ExpressionParserConstants {
         throw new ParseException();
       }
       MultiplicativeExpression();
-                  LValue left = pop();
-                  push( LValue.operation(vm, tok, pop(), left, frameGetter) );
+                  Node right = pop();
+                  push(operation(tok, pop(), right));
     }
   }
 
@@ -605,8 +857,8 @@ public class ExpressionParser implements ExpressionParserConstants {
         throw new ParseException();
       }
       UnaryExpression();
-                  LValue left = pop();
-                  push( LValue.operation(vm, tok, pop(), left, frameGetter) );
+                  Node right = pop();
+                  push(operation(tok, pop(), right));
     }
   }
 
@@ -628,7 +880,7 @@ public class ExpressionParser implements ExpressionParserConstants {
         throw new ParseException();
       }
       UnaryExpression();
-                  push( LValue.operation(vm, tok, pop(), frameGetter) );
+                  push(operation(tok, pop()));
       break;
     case INCR:
       PreIncrementExpression();
@@ -689,7 +941,7 @@ public class ExpressionParser implements ExpressionParserConstants {
         throw new ParseException();
       }
       UnaryExpression();
-                  push( LValue.operation(vm, tok, pop(), frameGetter) );
+                  push(operation(tok, pop()));
       break;
     default:
       jj_la1[26] = jj_gen;
@@ -888,11 +1140,11 @@ public class ExpressionParser implements ExpressionParserConstants {
       break;
     case IDENTIFIER:
       name = Name();
-                          push(LValue.makeName(vm, frameGetter, name));
+                          push(name(name));
       break;
     case THIS:
       jj_consume_token(THIS);
-                          push(LValue.makeThisObject(vm, frameGetter, token));
+                          push(thisObject(token));
       break;
     case SUPER:
       jj_consume_token(SUPER);
@@ -916,23 +1168,24 @@ public class ExpressionParser implements ExpressionParserConstants {
   }
 
   final public void PrimarySuffix() throws ParseException {
- List<Value> argList;
+ List<Node> argList;
     switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
     case LBRACKET:
       jj_consume_token(LBRACKET);
       Expression();
       jj_consume_token(RBRACKET);
-                          LValue index = pop();
-                          push(pop().arrayElementLValue(index));
+                          Node index = pop();
+                          push(arrayElement(pop(), index));
       break;
     case DOT:
       jj_consume_token(DOT);
       jj_consume_token(IDENTIFIER);
-                          push(pop().memberLValue(frameGetter, token.image));
+                          push(member(pop(), token.image));
       break;
     case LPAREN:
       argList = Arguments();
-                          peek().invokeWith(argList);
+                          invokes = true;
+                          push(invocation(pop(), argList));
       break;
     default:
       jj_la1[37] = jj_gen;
@@ -945,28 +1198,28 @@ public class ExpressionParser implements ExpressionParserConstants {
     switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
     case INTEGER_LITERAL:
       jj_consume_token(INTEGER_LITERAL);
-                          push(LValue.makeInteger(vm, token));
+                          push(literal(token));
       break;
     case FLOATING_POINT_LITERAL:
       jj_consume_token(FLOATING_POINT_LITERAL);
-                          push(LValue.makeFloat(vm, token));
+                          push(literal(token));
       break;
     case CHARACTER_LITERAL:
       jj_consume_token(CHARACTER_LITERAL);
-                          push(LValue.makeCharacter(vm, token));
+                          push(literal(token));
       break;
     case STRING_LITERAL:
       jj_consume_token(STRING_LITERAL);
-                          push(LValue.makeString(vm, token));
+                          push(literal(token));
       break;
     case FALSE:
     case TRUE:
       BooleanLiteral();
-                          push(LValue.makeBoolean(vm, token));
+                          push(literal(token));
       break;
     case NULL:
       NullLiteral();
-                          push(LValue.makeNull(vm, token));
+                          push(literal(token));
       break;
     default:
       jj_la1[38] = jj_gen;
@@ -994,8 +1247,8 @@ public class ExpressionParser implements ExpressionParserConstants {
     jj_consume_token(NULL);
   }
 
-  final public List<Value> Arguments() throws ParseException {
- List<Value> argList = new ArrayList<>();
+  final public List<Node> Arguments() throws ParseException {
+ List<Node> argList = new ArrayList<Node>();
     jj_consume_token(LPAREN);
     switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
     case FALSE:
@@ -1027,9 +1280,9 @@ public class ExpressionParser implements ExpressionParserConstants {
     throw new Error("Missing return statement in function");
   }
 
-  final public void ArgumentList(List<Value> argList) throws ParseException {
+  final public void ArgumentList(List<Node> argList) throws ParseException {
     Expression();
-                argList.add(pop().interiorGetValue());
+                argList.add(pop());
     label_17:
     while (true) {
       switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
@@ -1042,12 +1295,12 @@ public class ExpressionParser implements ExpressionParserConstants {
       }
       jj_consume_token(COMMA);
       Expression();
-                      argList.add(pop().interiorGetValue());
+                      argList.add(pop());
     }
   }
 
   final public void AllocationExpression() throws ParseException {
- List<Value> argList; String className;
+ List<Node> argList; String className;
     if (jj_2_7(2)) {
       jj_consume_token(NEW);
       PrimitiveType();
@@ -1060,7 +1313,8 @@ public class ExpressionParser implements ExpressionParserConstants {
         switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
         case LPAREN:
           argList = Arguments();
-                          push(LValue.makeNewObject(vm, frameGetter, className, argList));
+                          invokes = true;
+                          push(newObject(className, argList));
           break;
         case LBRACKET:
           ArrayDimensions();
@@ -1171,164 +1425,6 @@ public class ExpressionParser implements ExpressionParserConstants {
     finally { jj_save(8, xla); }
   }
 
-  private boolean jj_3R_94() {
-    if (jj_scan_token(DECR)) return true;
-    if (jj_3R_20()) return true;
-    return false;
-  }
-
-  private boolean jj_3R_86() {
-    if (jj_3R_24()) return true;
-    return false;
-  }
-
-  private boolean jj_3R_93() {
-    if (jj_scan_token(INCR)) return true;
-    if (jj_3R_20()) return true;
-    return false;
-  }
-
-  private boolean jj_3R_91() {
-    if (jj_3R_95()) return true;
-    return false;
-  }
-
-  private boolean jj_3R_23() {
-    Token xsp;
-    xsp = jj_scanpos;
-    if (jj_scan_token(10)) {
-    jj_scanpos = xsp;
-    if (jj_scan_token(15)) {
-    jj_scanpos = xsp;
-    if (jj_scan_token(12)) {
-    jj_scanpos = xsp;
-    if (jj_scan_token(45)) {
-    jj_scanpos = xsp;
-    if (jj_scan_token(34)) {
-    jj_scanpos = xsp;
-    if (jj_scan_token(36)) {
-    jj_scanpos = xsp;
-    if (jj_scan_token(27)) {
-    jj_scanpos = xsp;
-    if (jj_scan_token(21)) return true;
-    }
-    }
-    }
-    }
-    }
-    }
-    }
-    return false;
-  }
-
-  private boolean jj_3R_90() {
-    if (jj_3R_94()) return true;
-    return false;
-  }
-
-  private boolean jj_3R_89() {
-    if (jj_3R_93()) return true;
-    return false;
-  }
-
-  private boolean jj_3R_85() {
-    if (jj_3R_23()) return true;
-    return false;
-  }
-
-  private boolean jj_3R_60() {
-    if (jj_3R_58()) return true;
-    return false;
-  }
-
-  private boolean jj_3R_88() {
-    Token xsp;
-    xsp = jj_scanpos;
-    if (jj_scan_token(94)) {
-    jj_scanpos = xsp;
-    if (jj_scan_token(95)) return true;
-    }
-    if (jj_3R_83()) return true;
-    return false;
-  }
-
-  private boolean jj_3R_83() {
-    Token xsp;
-    xsp = jj_scanpos;
-    if (jj_3R_88()) {
-    jj_scanpos = xsp;
-    if (jj_3R_89()) {
-    jj_scanpos = xsp;
-    if (jj_3R_90()) {
-    jj_scanpos = xsp;
-    if (jj_3R_91()) return true;
-    }
-    }
-    }
-    return false;
-  }
-
-  private boolean jj_3R_82() {
-    Token xsp;
-    xsp = jj_scanpos;
-    if (jj_3R_85()) {
-    jj_scanpos = xsp;
-    if (jj_3R_86()) return true;
-    }
-    while (true) {
-      xsp = jj_scanpos;
-      if (jj_3R_87()) { jj_scanpos = xsp; break; }
-    }
-    return false;
-  }
-
-  private boolean jj_3R_59() {
-    if (jj_3R_55()) return true;
-    return false;
-  }
-
-  private boolean jj_3R_96() {
-    Token xsp;
-    xsp = jj_scanpos;
-    if (jj_scan_token(96)) {
-    jj_scanpos = xsp;
-    if (jj_scan_token(97)) {
-    jj_scanpos = xsp;
-    if (jj_scan_token(101)) return true;
-    }
-    }
-    if (jj_3R_83()) return true;
-    return false;
-  }
-
-  private boolean jj_3R_80() {
-    if (jj_3R_83()) return true;
-    Token xsp;
-    while (true) {
-      xsp = jj_scanpos;
-      if (jj_3R_96()) { jj_scanpos = xsp; break; }
-    }
-    return false;
-  }
-
-  private boolean jj_3R_92() {
-    Token xsp;
-    xsp = jj_scanpos;
-    if (jj_scan_token(94)) {
-    jj_scanpos = xsp;
-    if (jj_scan_token(95)) return true;
-    }
-    if (jj_3R_80()) return true;
-    return false;
-  }
-
-  private boolean jj_3_8() {
-    if (jj_scan_token(LBRACKET)) return true;
-    if (jj_3R_25()) return true;
-    if (jj_scan_token(RBRACKET)) return true;
-    return false;
-  }
-
   private boolean jj_3R_58() {
     Token xsp;
     if (jj_3_8()) return true;
@@ -1693,6 +1789,14 @@ public class ExpressionParser implements ExpressionParserConstants {
     return false;
   }
 
+  private boolean jj_3R_63() {
+    if (jj_scan_token(HOOK)) return true;
+    if (jj_3R_25()) return true;
+    if (jj_scan_token(COLON)) return true;
+    if (jj_3R_41()) return true;
+    return false;
+  }
+
   private boolean jj_3R_104() {
     if (jj_scan_token(LBRACKET)) return true;
     if (jj_scan_token(RBRACKET)) return true;
@@ -1711,14 +1815,6 @@ public class ExpressionParser implements ExpressionParserConstants {
     return false;
   }
 
-  private boolean jj_3R_63() {
-    if (jj_scan_token(HOOK)) return true;
-    if (jj_3R_25()) return true;
-    if (jj_scan_token(COLON)) return true;
-    if (jj_3R_41()) return true;
-    return false;
-  }
-
   private boolean jj_3R_33() {
     if (jj_3R_24()) return true;
     return false;
@@ -1730,6 +1826,14 @@ public class ExpressionParser implements ExpressionParserConstants {
     return false;
   }
 
+  private boolean jj_3R_41() {
+    if (jj_3R_47()) return true;
+    Token xsp;
+    xsp = jj_scanpos;
+    if (jj_3R_63()) jj_scanpos = xsp;
+    return false;
+  }
+
   private boolean jj_3R_32() {
     if (jj_3R_42()) return true;
     return false;
@@ -1757,43 +1861,7 @@ public class ExpressionParser implements ExpressionParserConstants {
     return false;
   }
 
-  private boolean jj_3R_20() {
-    if (jj_3R_26()) return true;
-    Token xsp;
-    while (true) {
-      xsp = jj_scanpos;
-      if (jj_3R_27()) { jj_scanpos = xsp; break; }
-    }
-    return false;
-  }
-
-  private boolean jj_3R_41() {
-    if (jj_3R_47()) return true;
-    Token xsp;
-    xsp = jj_scanpos;
-    if (jj_3R_63()) jj_scanpos = xsp;
-    return false;
-  }
-
-  private boolean jj_3R_106() {
-    if (jj_scan_token(DECR)) return true;
-    return false;
-  }
-
-  private boolean jj_3R_102() {
-    if (jj_scan_token(LPAREN)) return true;
-    if (jj_3R_24()) return true;
-    Token xsp;
-    while (true) {
-      xsp = jj_scanpos;
-      if (jj_3R_105()) { jj_scanpos = xsp; break; }
-    }
-    if (jj_scan_token(RPAREN)) return true;
-    if (jj_3R_95()) return true;
-    return false;
-  }
-
-  private boolean jj_3R_21() {
+  private boolean jj_3R_21() {
     Token xsp;
     xsp = jj_scanpos;
     if (jj_scan_token(79)) {
@@ -1833,6 +1901,47 @@ public class ExpressionParser implements ExpressionParserConstants {
     return false;
   }
 
+  private boolean jj_3R_20() {
+    if (jj_3R_26()) return true;
+    Token xsp;
+    while (true) {
+      xsp = jj_scanpos;
+      if (jj_3R_27()) { jj_scanpos = xsp; break; }
+    }
+    return false;
+  }
+
+  private boolean jj_3R_106() {
+    if (jj_scan_token(DECR)) return true;
+    return false;
+  }
+
+  private boolean jj_3_2() {
+    if (jj_3R_20()) return true;
+    if (jj_3R_21()) return true;
+    return false;
+  }
+
+  private boolean jj_3R_102() {
+    if (jj_scan_token(LPAREN)) return true;
+    if (jj_3R_24()) return true;
+    Token xsp;
+    while (true) {
+      xsp = jj_scanpos;
+      if (jj_3R_105()) { jj_scanpos = xsp; break; }
+    }
+    if (jj_scan_token(RPAREN)) return true;
+    if (jj_3R_95()) return true;
+    return false;
+  }
+
+  private boolean jj_3R_40() {
+    if (jj_3R_20()) return true;
+    if (jj_3R_21()) return true;
+    if (jj_3R_25()) return true;
+    return false;
+  }
+
   private boolean jj_3R_103() {
     Token xsp;
     xsp = jj_scanpos;
@@ -1866,16 +1975,23 @@ public class ExpressionParser implements ExpressionParserConstants {
     return false;
   }
 
-  private boolean jj_3_2() {
-    if (jj_3R_20()) return true;
-    if (jj_3R_21()) return true;
+  private boolean jj_3R_31() {
+    if (jj_3R_41()) return true;
     return false;
   }
 
-  private boolean jj_3R_40() {
-    if (jj_3R_20()) return true;
-    if (jj_3R_21()) return true;
-    if (jj_3R_25()) return true;
+  private boolean jj_3R_30() {
+    if (jj_3R_40()) return true;
+    return false;
+  }
+
+  private boolean jj_3R_25() {
+    Token xsp;
+    xsp = jj_scanpos;
+    if (jj_3R_30()) {
+    jj_scanpos = xsp;
+    if (jj_3R_31()) return true;
+    }
     return false;
   }
 
@@ -1894,26 +2010,6 @@ public class ExpressionParser implements ExpressionParserConstants {
     return false;
   }
 
-  private boolean jj_3R_31() {
-    if (jj_3R_41()) return true;
-    return false;
-  }
-
-  private boolean jj_3R_30() {
-    if (jj_3R_40()) return true;
-    return false;
-  }
-
-  private boolean jj_3R_25() {
-    Token xsp;
-    xsp = jj_scanpos;
-    if (jj_3R_30()) {
-    jj_scanpos = xsp;
-    if (jj_3R_31()) return true;
-    }
-    return false;
-  }
-
   private boolean jj_3R_29() {
     if (jj_scan_token(LPAREN)) return true;
     if (jj_3R_24()) return true;
@@ -1977,25 +2073,35 @@ public class ExpressionParser implements ExpressionParserConstants {
     return false;
   }
 
-  private boolean jj_3R_99() {
-    if (jj_3R_101()) return true;
-    return false;
-  }
-
   private boolean jj_3R_87() {
     if (jj_scan_token(LBRACKET)) return true;
     if (jj_scan_token(RBRACKET)) return true;
     return false;
   }
 
-  private boolean jj_3R_98() {
-    if (jj_3R_100()) return true;
+  private boolean jj_3_1() {
+    if (jj_scan_token(DOT)) return true;
+    if (jj_scan_token(IDENTIFIER)) return true;
     return false;
   }
 
-  private boolean jj_3_1() {
-    if (jj_scan_token(DOT)) return true;
+  private boolean jj_3R_24() {
     if (jj_scan_token(IDENTIFIER)) return true;
+    Token xsp;
+    while (true) {
+      xsp = jj_scanpos;
+      if (jj_3_1()) { jj_scanpos = xsp; break; }
+    }
+    return false;
+  }
+
+  private boolean jj_3R_99() {
+    if (jj_3R_101()) return true;
+    return false;
+  }
+
+  private boolean jj_3R_98() {
+    if (jj_3R_100()) return true;
     return false;
   }
 
@@ -2029,16 +2135,164 @@ public class ExpressionParser implements ExpressionParserConstants {
     return false;
   }
 
-  private boolean jj_3R_24() {
-    if (jj_scan_token(IDENTIFIER)) return true;
+  private boolean jj_3R_86() {
+    if (jj_3R_24()) return true;
+    return false;
+  }
+
+  private boolean jj_3R_94() {
+    if (jj_scan_token(DECR)) return true;
+    if (jj_3R_20()) return true;
+    return false;
+  }
+
+  private boolean jj_3R_93() {
+    if (jj_scan_token(INCR)) return true;
+    if (jj_3R_20()) return true;
+    return false;
+  }
+
+  private boolean jj_3R_23() {
+    Token xsp;
+    xsp = jj_scanpos;
+    if (jj_scan_token(10)) {
+    jj_scanpos = xsp;
+    if (jj_scan_token(15)) {
+    jj_scanpos = xsp;
+    if (jj_scan_token(12)) {
+    jj_scanpos = xsp;
+    if (jj_scan_token(45)) {
+    jj_scanpos = xsp;
+    if (jj_scan_token(34)) {
+    jj_scanpos = xsp;
+    if (jj_scan_token(36)) {
+    jj_scanpos = xsp;
+    if (jj_scan_token(27)) {
+    jj_scanpos = xsp;
+    if (jj_scan_token(21)) return true;
+    }
+    }
+    }
+    }
+    }
+    }
+    }
+    return false;
+  }
+
+  private boolean jj_3R_85() {
+    if (jj_3R_23()) return true;
+    return false;
+  }
+
+  private boolean jj_3R_91() {
+    if (jj_3R_95()) return true;
+    return false;
+  }
+
+  private boolean jj_3R_82() {
     Token xsp;
+    xsp = jj_scanpos;
+    if (jj_3R_85()) {
+    jj_scanpos = xsp;
+    if (jj_3R_86()) return true;
+    }
     while (true) {
       xsp = jj_scanpos;
-      if (jj_3_1()) { jj_scanpos = xsp; break; }
+      if (jj_3R_87()) { jj_scanpos = xsp; break; }
     }
     return false;
   }
 
+  private boolean jj_3R_90() {
+    if (jj_3R_94()) return true;
+    return false;
+  }
+
+  private boolean jj_3R_89() {
+    if (jj_3R_93()) return true;
+    return false;
+  }
+
+  private boolean jj_3R_60() {
+    if (jj_3R_58()) return true;
+    return false;
+  }
+
+  private boolean jj_3R_88() {
+    Token xsp;
+    xsp = jj_scanpos;
+    if (jj_scan_token(94)) {
+    jj_scanpos = xsp;
+    if (jj_scan_token(95)) return true;
+    }
+    if (jj_3R_83()) return true;
+    return false;
+  }
+
+  private boolean jj_3R_83() {
+    Token xsp;
+    xsp = jj_scanpos;
+    if (jj_3R_88()) {
+    jj_scanpos = xsp;
+    if (jj_3R_89()) {
+    jj_scanpos = xsp;
+    if (jj_3R_90()) {
+    jj_scanpos = xsp;
+    if (jj_3R_91()) return true;
+    }
+    }
+    }
+    return false;
+  }
+
+  private boolean jj_3R_59() {
+    if (jj_3R_55()) return true;
+    return false;
+  }
+
+  private boolean jj_3R_96() {
+    Token xsp;
+    xsp = jj_scanpos;
+    if (jj_scan_token(96)) {
+    jj_scanpos = xsp;
+    if (jj_scan_token(97)) {
+    jj_scanpos = xsp;
+    if (jj_scan_token(101)) return true;
+    }
+    }
+    if (jj_3R_83()) return true;
+    return false;
+  }
+
+  private boolean jj_3R_80() {
+    if (jj_3R_83()) return true;
+    Token xsp;
+    while (true) {
+      xsp = jj_scanpos;
+      if (jj_3R_96()) { jj_scanpos = xsp; break; }
+    }
+    return false;
+  }
+
+  private boolean jj_3R_92() {
+    Token xsp;
+    xsp = jj_scanpos;
+    if (jj_scan_token(94)) {
+    jj_scanpos = xsp;
+    if (jj_scan_token(95)) return true;
+    }
+    if (jj_3R_80()) return true;
+    return false;
+  }
+
+  private boolean jj_3_8() {
+    if (jj_scan_token(LBRACKET)) return true;
+    if (jj_3R_25()) return true;
+    if (jj_scan_token(RBRACKET)) return true;
+    return false;
+  }
+
   /** Generated Token Manager. */
   public ExpressionParserTokenManager token_source;
   JavaCharStream jj_input_stream;
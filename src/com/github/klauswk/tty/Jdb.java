@@ -60,6 +60,27 @@ public class Jdb {
         }
       } else if (token.equals("-trackallthreads")) {
         trackVthreads = true;
+      } else if (token.equals("-samplevthreads")) {
+        if (i == (argv.length - 1)) {
+          usageError("No vthread sample rate specified.");
+          return;
+        }
+        String rateStr = argv[++i];
+        int rate = 0;
+        try {
+          rate = Integer.parseInt(rateStr);
+        } catch (NumberFormatException nfe) {
+          // reported below
+        }
+        if (rate < 1) {
+          usageError("vthread sample rate must be a positive integer:", rateStr);
+          return;
+        }
+        Env.setVThreadSampleRate(rate);
+      } else if (token.equals("-watchsources")) {
+        Env.setWatchSources(true);
+      } else if (token.equals("-threadedevents")) {
+        Env.setThreadedEvents(true);
       } else if (token.equals("-X")) {
         usageError("Use java minus X to see");
         return;
@@ -188,6 +209,7 @@ public class Jdb {
         Commands evaluator = new Commands();
         evaluator.commandVersion(progname,
             Bootstrap.virtualMachineManager());
+        MessageOutput.flush();
         System.exit(0);
       } else if (token.startsWith("-")) {
         usageError("invalid option", token);
@@ -298,6 +320,7 @@ public class Jdb {
   private static void usage() {
     MessageOutput.println("zz usage text", new Object [] {progname,
         File.pathSeparator});
+    MessageOutput.flush();
     System.exit(0);
   }
 
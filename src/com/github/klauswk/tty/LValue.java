@@ -115,6 +115,9 @@ abstract class LValue {
         if (vv instanceof ObjectReference &&
             !(vv instanceof StringReference) &&
             !(vv instanceof ArrayReference)) {
+            if (frameGetter instanceof ExpressionParser.GetFrameWithoutInvocations) {
+                throw new ParseException("toString() would be invoked on " + vv);
+            }
             StackFrame frame;
             try {
                 frame = frameGetter.get();
@@ -495,7 +498,11 @@ abstract class LValue {
                 }
                 return jdiValue = obj.getValue(matchingField);
             } else {
-                return jdiValue = obj.invokeMethod(thread, matchingMethod, methodArguments, 0);
+                try {
+                    return jdiValue = obj.invokeMethod(thread, matchingMethod, methodArguments, 0);
+                } finally {
+                    ThreadInfo.resumed();   // all threads ran during the call
+                }
             }
         }
 
@@ -558,10 +565,18 @@ abstract class LValue {
                 return jdiValue = refType.getValue(matchingField);
             } else if (refType instanceof ClassType) {
                 ClassType clazz = (ClassType)refType;
-                return jdiValue = clazz.invokeMethod(thread, matchingMethod, methodArguments, 0);
+                try {
+                    return jdiValue = clazz.invokeMethod(thread, matchingMethod, methodArguments, 0);
+                } finally {
+                    ThreadInfo.resumed();
+                }
             } else if (refType instanceof InterfaceType) {
                 InterfaceType iface = (InterfaceType)refType;
-                return jdiValue = iface.invokeMethod(thread, matchingMethod, methodArguments, 0);
+                try {
+                    return jdiValue = iface.invokeMethod(thread, matchingMethod, methodArguments, 0);
+                } finally {
+                    ThreadInfo.resumed();
+                }
             } else {
                 throw new InvalidTypeException("Cannot invoke static method on " +
                                          refType.name());
@@ -848,7 +863,11 @@ abstract class LValue {
         ObjectReference newObject;
         try {
             ThreadReference thread = frameGetter.get().thread();
-            newObject = classType.newInstance(thread, constructor, arguments, 0);
+            try {
+                newObject = classType.newInstance(thread, constructor, arguments, 0);
+            } finally {
+                ThreadInfo.resumed();
+            }
         } catch (InvocationException ie) {
             throw new ParseException("Exception in " + className + " constructor: " +
                                      ie.exception().referenceType().name());
@@ -0,0 +1,215 @@
+package com.github.klauswk.tty;
+
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.VirtualMachine;
+import com.sun.jdi.event.ClassPrepareEvent;
+import com.sun.jdi.event.ClassUnloadEvent;
+import com.sun.jdi.event.Event;
+import com.sun.jdi.request.ClassPrepareRequest;
+import com.sun.jdi.request.ClassUnloadRequest;
+import com.sun.jdi.request.EventRequest;
+import com.sun.jdi.request.EventRequestManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The classes loaded in the target VM, by exact name, name prefix
+ * (such as a package) and name suffix (such as a simple name).
+ *
+ * The list is fetched once when the VM is connected and then kept
+ * current from class prepare and unload events, requested with
+ * SUSPEND_NONE, so that lookups never go to the VM.
+ */
+class LoadedClasses {
+
+    /* Name to the types of that name, one per defining loader. */
+    private final ConcurrentSkipListMap<String, List<ReferenceType>> types =
+        new ConcurrentSkipListMap<>();
+
+    /*
+     * Reversed simple name ("ooF" for "a.b.Foo") to the names ending
+     * in it, so that a suffix lookup is a range of this map.
+     */
+    private final ConcurrentSkipListMap<String, Set<String>> reversedSimpleNames =
+        new ConcurrentSkipListMap<>();
+
+    private volatile VirtualMachine vm;
+    private volatile ClassPrepareRequest prepareRequest;
+    private volatile ClassUnloadRequest unloadRequest;
+
+    /**
+     * Start following the classes of 'vm', dropping any previous VM's.
+     */
+    synchronized void track(VirtualMachine vm) {
+        this.vm = vm;
+        types.clear();
+        reversedSimpleNames.clear();
+
+        /*
+         * Enable the requests before listing, so that a class loaded
+         * in between is not missed; seeing it twice is harmless.
+         */
+        if (vm.canBeModified()) {
+            EventRequestManager erm = vm.eventRequestManager();
+            ClassPrepareRequest cpr = erm.createClassPrepareRequest();
+            cpr.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+            cpr.enable();
+            ClassUnloadRequest cur = erm.createClassUnloadRequest();
+            cur.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+            cur.enable();
+            prepareRequest = cpr;
+            unloadRequest = cur;
+        }
+
+        for (ReferenceType type : vm.allClasses()) {
+            add(type);
+        }
+    }
+
+    /**
+     * Apply 'event' if it came from one of our requests.
+     * @return true if it did, in which case it needs no further handling.
+     */
+    boolean update(Event event) {
+        EventRequest request = event.request();
+        if (request == null) {
+            return false;
+        }
+        if (request.equals(prepareRequest)) {
+            add(((ClassPrepareEvent)event).referenceType());
+            return true;
+        }
+        if (request.equals(unloadRequest)) {
+            String name = ((ClassUnloadEvent)event).className();
+            /*
+             * The event does not say which loader's class went away;
+             * ask again for just this name.
+             */
+            List<ReferenceType> remaining = vm.classesByName(name);
+            if (remaining.isEmpty()) {
+                types.remove(name);
+                Set<String> names = reversedSimpleNames.get(reversedSimpleName(name));
+                if (names != null) {
+                    names.remove(name);
+                }
+            } else {
+                types.put(name, List.copyOf(remaining));
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void add(ReferenceType type) {
+        String typeName = type.name();
+        reversedSimpleNames.computeIfAbsent(reversedSimpleName(typeName),
+                                            k -> ConcurrentHashMap.newKeySet())
+                           .add(typeName);
+        types.compute(typeName, (name, list) -> {
+            if (list == null) {
+                return List.of(type);
+            }
+            if (list.contains(type)) {
+                return list;
+            }
+            List<ReferenceType> copy = new ArrayList<>(list);
+            copy.add(type);
+            return List.copyOf(copy);
+        });
+    }
+
+    private static String reversedSimpleName(String name) {
+        return new StringBuilder(name.substring(name.lastIndexOf('.') + 1))
+                   .reverse().toString();
+    }
+
+    private NavigableMap<String, List<ReferenceType>> types() {
+        if (vm == null) {
+            throw new VMNotConnectedException();
+        }
+        return types;
+    }
+
+    /**
+     * @return the loaded types named 'name'; usually one, but each
+     * class loader may define its own.
+     */
+    List<ReferenceType> byName(String name) {
+        List<ReferenceType> list = types().get(name);
+        return (list == null) ? List.of() : list;
+    }
+
+    /**
+     * @return the names of the loaded classes starting with 'prefix',
+     * in order.
+     */
+    List<String> namesStartingWith(String prefix) {
+        return new ArrayList<>(prefixRange(prefix).keySet());
+    }
+
+    /**
+     * @return the loaded types whose name starts with 'prefix', in
+     * name order.
+     */
+    List<ReferenceType> startingWith(String prefix) {
+        List<ReferenceType> list = new ArrayList<>();
+        for (List<ReferenceType> named : prefixRange(prefix).values()) {
+            list.addAll(named);
+        }
+        return list;
+    }
+
+    private NavigableMap<String, List<ReferenceType>> prefixRange(String prefix) {
+        return types().subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    /**
+     * @return the loaded types whose name ends with 'suffix', in
+     * name order.
+     */
+    List<ReferenceType> endingWith(String suffix) {
+        NavigableMap<String, List<ReferenceType>> all = types();
+        int dot = suffix.lastIndexOf('.');
+        String reversed = new StringBuilder(suffix.substring(dot + 1)).reverse().toString();
+        Collection<Set<String>> candidates;
+        if (dot >= 0) {
+            // The simple name is exactly what follows the last dot.
+            Set<String> names = reversedSimpleNames.get(reversed);
+            candidates = (names == null) ? List.of() : List.of(names);
+        } else {
+            candidates = reversedSimpleNames.subMap(reversed, true,
+                                                    reversed + Character.MAX_VALUE,
+                                                    false).values();
+        }
+        TreeSet<String> matches = new TreeSet<>();
+        for (Set<String> names : candidates) {
+            for (String name : names) {
+                if (name.endsWith(suffix)) {
+                    matches.add(name);
+                }
+            }
+        }
+        List<ReferenceType> list = new ArrayList<>();
+        for (String name : matches) {
+            List<ReferenceType> named = all.get(name);
+            if (named != null) {
+                list.addAll(named);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return every loaded type, in name order.
+     */
+    List<ReferenceType> all() {
+        return startingWith("");
+    }
+}
@@ -33,7 +33,14 @@
 
 package com.github.klauswk.tty;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.text.FieldPosition;
+import java.text.Format;
 import java.text.MessageFormat;
 /**
  * Internationalization (i18n) convenience methods for jdb.
@@ -52,14 +59,110 @@ public class MessageOutput {
      */
     static ResourceBundle textResources;
 
-    /** Our message formatter.  Allocated once, used many times */
-    private static MessageFormat messageFormat;
+    /**
+     * A message pattern, parsed once when its key is first formatted.
+     * Formats whose arguments need no subformats (the usual "{0}") are
+     * shared by all threads; the MessageFormat is never changed after
+     * parsing, and formatting plain arguments only reads it. Patterns
+     * with subformats, such as "{0,number,integer}", would share the
+     * subformats' mutable state, so each thread formats with a clone.
+     */
+    private static final class CompiledMessage {
+        final MessageFormat prototype;
+        final boolean shared;
+
+        CompiledMessage(String pattern) {
+            prototype = new MessageFormat(pattern);
+            boolean plain = true;
+            for (Format format : prototype.getFormats()) {
+                plain &= (format == null);
+            }
+            shared = plain;
+        }
+    }
+
+    /* Resource key to its parsed pattern. */
+    private static final Map<String, CompiledMessage> compiled = new ConcurrentHashMap<>();
+
+    /*
+     * Per-thread formatting state: clones of the unshared formats and a
+     * buffer to format into. The buffer is taken while in use, since an
+     * argument's toString() may itself format a message.
+     */
+    private static final class Scratch {
+        final Map<CompiledMessage, MessageFormat> formats = new IdentityHashMap<>();
+        final StringBuffer buffer = new StringBuffer(128);
+        final FieldPosition position = new FieldPosition(0);
+        boolean busy = false;
+    }
+
+    private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /*
+     * Terminal output is buffered and written out by flush(): before
+     * reading a command, at each prompt, when the event renderer has
+     * caught up, and at the end of each line of the target's output.
+     */
+    private static final Writer stdout =
+        new BufferedWriter(new OutputStreamWriter(System.out, System.out.charset()), 1 << 14);
+
+    /*
+     * Output of the current thread, while it is being captured rather
+     * than printed. See EventHandler and EventOutput.
+     */
+    private static final ThreadLocal<StringBuilder> captured = new ThreadLocal<>();
+
+    /**
+     * Collect what this thread prints from now on, until endCapture().
+     */
+    static void startCapture() {
+        captured.set(new StringBuilder());
+    }
+
+    /**
+     * @return what this thread printed since startCapture(), or ""
+     * if it was not capturing.
+     */
+    static String endCapture() {
+        StringBuilder text = captured.get();
+        captured.remove();
+        return (text == null) ? "" : text.toString();
+    }
+
+    private static void out(String text) {
+        StringBuilder capture = captured.get();
+        if (capture != null) {
+            capture.append(text);
+        } else {
+            try {
+                stdout.write(text);
+            } catch (IOException e) {
+                // Like System.out, ignore a closed terminal.
+            }
+        }
+    }
+
+    /* One write, so that lines of different threads do not interleave. */
+    private static void outln(String text) {
+        out(text + System.lineSeparator());
+    }
+
+    static void flush() {
+        if (captured.get() == null) {
+            try {
+                stdout.flush();
+            } catch (IOException e) {
+                // Like System.out, ignore a closed terminal.
+            }
+        }
+    }
 
     /**
      * Fatal shutdown notification.  This is sent to System.err
      * instead of System.out
      */
     static void fatalError(String messageKey) {
+        flush();
         System.err.println();
         System.err.println(format("Fatal error"));
         System.err.println(format(messageKey));
@@ -84,13 +187,32 @@ public class MessageOutput {
     /**
      * Fetch a string by key lookup and format in the arguments.
      */
-    static synchronized String format(String key, Object [] arguments) {
-        if (messageFormat == null) {
-            messageFormat = new MessageFormat (textResources.getString(key));
-        } else {
-            messageFormat.applyPattern (textResources.getString(key));
+    static String format(String key, Object [] arguments) {
+        CompiledMessage message = compiled.get(key);
+        if (message == null) {
+            message = compiled.computeIfAbsent(key, k ->
+                          new CompiledMessage(textResources.getString(k)));
+        }
+        Scratch local = scratch.get();
+        MessageFormat format = message.prototype;
+        if (!message.shared) {
+            format = local.formats.get(message);
+            if (format == null) {
+                format = (MessageFormat)message.prototype.clone();
+                local.formats.put(message, format);
+            }
+        }
+        if (local.busy) {
+            return format.format(arguments);
+        }
+        local.busy = true;
+        try {
+            StringBuffer buffer = local.buffer;
+            buffer.setLength(0);
+            return format.format(arguments, buffer, local.position).toString();
+        } finally {
+            local.busy = false;
         }
-        return (messageFormat.format (arguments));
     }
 
     /**
@@ -105,13 +227,20 @@ public class MessageOutput {
      * method.
      */
     static void printDirectln(String line) {
-        System.out.println(line);
+        outln(line);
     }
     static void printDirect(String line) {
-        System.out.print(line);
+        out(line);
     }
+    /*
+     * Used for the target's output, which is flushed at each line
+     * rather than left in the buffer until the next prompt.
+     */
     static void printDirect(char c) {
-        System.out.print(c);
+        out(String.valueOf(c));
+        if (c == '\n') {
+            flush();
+        }
     }
 
     /**
@@ -119,20 +248,20 @@ public class MessageOutput {
      * Use this instead of '\n'
      */
     static void println() {
-        System.out.println();
+        outln("");
     }
 
     /**
      * Format and print a simple string.
      */
     static void print(String key) {
-        System.out.print(format(key));
+        out(format(key));
     }
     /**
      * Format and print a simple string.
      */
     static void println(String key) {
-        System.out.println(format(key));
+        outln(format(key));
     }
 
 
@@ -141,10 +270,10 @@ public class MessageOutput {
      * This is the most common usage.
      */
     static void print(String key, String argument) {
-        System.out.print(format(key, argument));
+        out(format(key, argument));
     }
     static void println(String key, String argument) {
-        System.out.println(format(key, argument));
+        outln(format(key, argument));
     }
 
     /**
@@ -152,25 +281,25 @@ public class MessageOutput {
      * number of message arguments.
      */
     static void println(String key, Object [] arguments) {
-        System.out.println(format(key, arguments));
+        outln(format(key, arguments));
     }
 
     /**
      * Print a newline, followed by the string.
      */
     static void lnprint(String key) {
-        System.out.println();
-        System.out.print(textResources.getString(key));
+        outln("");
+        out(textResources.getString(key));
     }
 
     static void lnprint(String key, String argument) {
-        System.out.println();
-        System.out.print(format(key, argument));
+        outln("");
+        out(format(key, argument));
     }
 
     static void lnprint(String key, Object [] arguments) {
-        System.out.println();
-        System.out.print(format(key, arguments));
+        outln("");
+        out(format(key, arguments));
     }
 
     /**
@@ -184,7 +313,7 @@ public class MessageOutput {
                 printDirectln(key);
             }
         }
-        System.out.flush();
+        flush();
         e.printStackTrace();
     }
 
@@ -195,15 +324,15 @@ public class MessageOutput {
     static void printPrompt(boolean simple) {
         ThreadInfo threadInfo = ThreadInfo.getCurrentThreadInfo();
         if (simple || threadInfo == null) {
-            System.out.print
+            out
                 (MessageOutput.format("jdb prompt with no current thread"));
         } else {
-            System.out.print
+            out
                 (MessageOutput.format("jdb prompt thread name and current stack frame",
                                       new Object [] {
                                           threadInfo.getThread().name(),
                                           Integer.valueOf(threadInfo.getCurrentFrameIndex() + 1)}));
         }
-        System.out.flush();
+        flush();
     }
 }
@@ -0,0 +1,146 @@
+package com.github.klauswk.tty;
+
+import com.sun.jdi.Method;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.VirtualMachine;
+import com.sun.jdi.request.EventRequest;
+import com.sun.jdi.request.EventRequestManager;
+import com.sun.jdi.request.MethodEntryRequest;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts calls to the methods of the classes matching a pattern, for
+ * the "count methods" command.
+ *
+ * The class pattern is given to the target VM as a class filter on a
+ * SUSPEND_NONE method entry request, so only matching calls are sent
+ * at all, and nothing is printed per call. Each method is given an int
+ * id when first seen, and its count is kept in a long[] slot.
+ */
+class MethodCounter implements MethodEventSink {
+
+    static final int TOP = 50;
+
+    private static MethodCounter current = null;
+
+    private final String classPattern;
+    private final MethodEntryRequest request;
+    private final long startMillis = System.currentTimeMillis();
+    private long endMillis = 0;
+
+    private final Map<Method, Integer> ids = new HashMap<>();
+    private Method[] methods = new Method[64];
+    private long[] counts = new long[64];
+    private long total = 0;
+
+    private MethodCounter(VirtualMachine vm, String classPattern) {
+        this.classPattern = classPattern;
+        EventRequestManager erm = vm.eventRequestManager();
+        request = erm.createMethodEntryRequest();
+        request.addClassFilter(classPattern);
+        request.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+        attach(request);
+        request.enable();
+    }
+
+    /**
+     * Start counting calls to the methods of 'classPattern', ending
+     * any count in progress.
+     */
+    static synchronized MethodCounter start(VirtualMachine vm, String classPattern) {
+        stop();
+        current = new MethodCounter(vm, classPattern);
+        return current;
+    }
+
+    /**
+     * End the count in progress, if any.
+     * @return the counter that was stopped, or null.
+     */
+    static synchronized MethodCounter stop() {
+        MethodCounter counter = current;
+        if (counter != null) {
+            counter.finish();
+            current = null;
+        }
+        return counter;
+    }
+
+    /**
+     * End this count, if it is still the one in progress.
+     * @return true if it was.
+     */
+    static synchronized boolean stop(MethodCounter counter) {
+        if (current != counter) {
+            return false;
+        }
+        stop();
+        return true;
+    }
+
+    static synchronized MethodCounter current() {
+        return current;
+    }
+
+    private synchronized void finish() {
+        endMillis = System.currentTimeMillis();
+        try {
+            request.virtualMachine().eventRequestManager().deleteEventRequest(request);
+        } catch (RuntimeException e) {
+            // The VM is gone; so is the request.
+        }
+    }
+
+    @Override
+    public synchronized void methodEntered(ThreadReference thread, Method method) {
+        if (endMillis != 0) {
+            return;     // stopped while the event was queued
+        }
+        Integer id = ids.get(method);
+        if (id == null) {
+            id = ids.size();
+            ids.put(method, id);
+            if (id == methods.length) {
+                methods = Arrays.copyOf(methods, id * 2);
+                counts = Arrays.copyOf(counts, id * 2);
+            }
+            methods[id] = method;
+        }
+        counts[id]++;
+        total++;
+    }
+
+    @Override
+    public void methodExited(ThreadReference thread, Method method) {
+    }
+
+    /**
+     * Print the methods called so far, most called first.
+     */
+    synchronized void print() {
+        long end = (endMillis != 0) ? endMillis : System.currentTimeMillis();
+        int size = ids.size();
+        MessageOutput.println("Method count summary",
+                              new Object [] {total, size, classPattern,
+                                             (end - startMillis) / 1000.0});
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+        for (int i = 0; i < Math.min(TOP, size); i++) {
+            Method method = methods[order[i]];
+            long count = counts[order[i]];
+            MessageOutput.printDirectln(String.format("%12d %6.2f%%  %s.%s%s",
+                                                      count, 100.0 * count / total,
+                                                      method.declaringType().name(),
+                                                      method.name(), method.signature()));
+        }
+        if (size > TOP) {
+            MessageOutput.println("Method count more", new Object [] {size - TOP});
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.klauswk.tty;
+
+import com.sun.jdi.Method;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.request.EventRequest;
+
+/**
+ * Consumes the method entry and exit events of the requests it is
+ * attached to, in place of the usual printing. Used by the commands
+ * that collect method events in bulk, such as "trace record" and
+ * "count methods".
+ */
+interface MethodEventSink {
+
+    void methodEntered(ThreadReference thread, Method method);
+
+    void methodExited(ThreadReference thread, Method method);
+
+    /**
+     * Have the events of 'request' go to this sink.
+     */
+    default void attach(EventRequest request) {
+        request.putProperty(MethodEventSink.class, this);
+    }
+
+    /**
+     * @return the sink for the events of 'request', if any.
+     */
+    static MethodEventSink sinkFor(EventRequest request) {
+        return (request == null) ? null
+                                 : (MethodEventSink)request.getProperty(MethodEventSink.class);
+    }
+}
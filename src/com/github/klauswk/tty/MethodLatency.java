@@ -0,0 +1,272 @@
+package com.github.klauswk.tty;
+
+import com.sun.jdi.Method;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.VirtualMachine;
+import com.sun.jdi.request.EventRequest;
+import com.sun.jdi.request.EventRequestManager;
+import com.sun.jdi.request.MethodEntryRequest;
+import com.sun.jdi.request.MethodExitRequest;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures how long the methods of the classes matching a pattern take,
+ * for the "latency" command.
+ *
+ * SUSPEND_NONE method entry and exit requests, filtered in the target
+ * VM by the class pattern, feed a stack per thread; each exit is paired
+ * with the entry on top of its thread's stack, and the time between
+ * the two goes into the method's Histogram. A stack is dropped once it
+ * unwinds to empty or its thread dies. Times are taken by the debugger
+ * as the events arrive, so they include event delivery.
+ */
+class MethodLatency implements MethodEventSink {
+
+    static final int TOP = 50;
+
+    /**
+     * A log-linear histogram of nanosecond values, in the manner of
+     * HdrHistogram: each power of two is split into SUB_BUCKETS linear
+     * buckets, so a value is known to within 1/SUB_BUCKETS of itself.
+     * Memory is fixed; values past MAX_NANOS count as MAX_NANOS.
+     */
+    static final class Histogram {
+        private static final int SUB_BITS = 5;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final long MAX_NANOS = 1L << 42;     // over an hour
+        private static final int BUCKETS = index(MAX_NANOS) + 1;
+
+        private final long[] counts = new long[BUCKETS];
+        private long total = 0;
+        private long sum = 0;
+        private long max = 0;
+
+        private static int index(long value) {
+            int magnitude = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+            return magnitude * SUB_BUCKETS + (int)(value >>> magnitude);
+        }
+
+        /* The highest value that falls in bucket 'index'. */
+        private static long highest(int index) {
+            if (index < 2 * SUB_BUCKETS) {
+                return index;
+            }
+            int magnitude = index / SUB_BUCKETS - 1;
+            long lowest = (long)(index - magnitude * SUB_BUCKETS) << magnitude;
+            return lowest + (1L << magnitude) - 1;
+        }
+
+        void record(long nanos) {
+            long value = Math.min(Math.max(nanos, 0), MAX_NANOS);
+            counts[index(value)]++;
+            total++;
+            sum += value;
+            max = Math.max(max, value);
+        }
+
+        long total() {
+            return total;
+        }
+
+        long sum() {
+            return sum;
+        }
+
+        long max() {
+            return max;
+        }
+
+        /* The value below which 'percentile' percent of the values fall. */
+        long percentile(double percentile) {
+            long target = Math.max(1, (long)Math.ceil(total * percentile / 100.0));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(highest(i), max);
+                }
+            }
+            return max;
+        }
+    }
+
+    /* The methods a thread is in, with their entry times. */
+    private static final class CallStack {
+        int[] methods = new int[16];
+        long[] entered = new long[16];
+        int depth = 0;
+
+        void push(int method, long nanos) {
+            if (depth == methods.length) {
+                methods = Arrays.copyOf(methods, depth * 2);
+                entered = Arrays.copyOf(entered, depth * 2);
+            }
+            methods[depth] = method;
+            entered[depth] = nanos;
+            depth++;
+        }
+    }
+
+    private static MethodLatency current = null;
+
+    private final String classPattern;
+    private final MethodEntryRequest entryRequest;
+    private final MethodExitRequest exitRequest;
+    private boolean stopped = false;
+
+    private final Map<Method, Integer> ids = new HashMap<>();
+    private Method[] methods = new Method[64];
+    private Histogram[] histograms = new Histogram[64];
+    private final Map<ThreadReference, CallStack> stacks = new HashMap<>();
+
+    private MethodLatency(VirtualMachine vm, String classPattern) {
+        this.classPattern = classPattern;
+        EventRequestManager erm = vm.eventRequestManager();
+        entryRequest = erm.createMethodEntryRequest();
+        entryRequest.addClassFilter(classPattern);
+        entryRequest.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+        attach(entryRequest);
+        exitRequest = erm.createMethodExitRequest();
+        exitRequest.addClassFilter(classPattern);
+        exitRequest.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+        attach(exitRequest);
+        // Exits first, so that no entry is missing its exit.
+        exitRequest.enable();
+        entryRequest.enable();
+    }
+
+    /**
+     * Start measuring the methods of 'classPattern', ending any
+     * measurement in progress.
+     */
+    static synchronized MethodLatency start(VirtualMachine vm, String classPattern) {
+        stop();
+        current = new MethodLatency(vm, classPattern);
+        return current;
+    }
+
+    /**
+     * End the measurement in progress, if any.
+     * @return the one that was stopped, or null.
+     */
+    static synchronized MethodLatency stop() {
+        MethodLatency latency = current;
+        if (latency != null) {
+            latency.finish();
+            current = null;
+        }
+        return latency;
+    }
+
+    static synchronized MethodLatency current() {
+        return current;
+    }
+
+    private synchronized void finish() {
+        stopped = true;
+        stacks.clear();
+        try {
+            EventRequestManager erm = entryRequest.virtualMachine().eventRequestManager();
+            erm.deleteEventRequest(entryRequest);
+            erm.deleteEventRequest(exitRequest);
+        } catch (RuntimeException e) {
+            // The VM is gone; so are the requests.
+        }
+    }
+
+    private int methodId(Method method) {
+        Integer id = ids.get(method);
+        if (id == null) {
+            id = ids.size();
+            ids.put(method, id);
+            if (id == methods.length) {
+                methods = Arrays.copyOf(methods, id * 2);
+                histograms = Arrays.copyOf(histograms, id * 2);
+            }
+            methods[id] = method;
+            histograms[id] = new Histogram();
+        }
+        return id;
+    }
+
+    @Override
+    public synchronized void methodEntered(ThreadReference thread, Method method) {
+        if (stopped) {
+            return;
+        }
+        long now = System.nanoTime();
+        stacks.computeIfAbsent(thread, t -> new CallStack()).push(methodId(method), now);
+    }
+
+    @Override
+    public synchronized void methodExited(ThreadReference thread, Method method) {
+        if (stopped) {
+            return;
+        }
+        long now = System.nanoTime();
+        CallStack stack = stacks.get(thread);
+        if (stack == null) {
+            return;     // entered before measuring started
+        }
+        int id = methodId(method);
+        // Unwind to the matching entry, in case an exit went missing.
+        int depth = stack.depth;
+        while (depth > 0 && stack.methods[depth - 1] != id) {
+            depth--;
+        }
+        if (depth == 0) {
+            return;
+        }
+        stack.depth = depth - 1;
+        histograms[id].record(now - stack.entered[depth - 1]);
+        if (stack.depth == 0) {
+            stacks.remove(thread);
+        }
+    }
+
+    /**
+     * Forget the stack of 'thread', which has ended.
+     */
+    synchronized void threadDied(ThreadReference thread) {
+        stacks.remove(thread);
+    }
+
+    /**
+     * Print the measured methods, most total time first.
+     */
+    synchronized void print() {
+        int size = ids.size();
+        Integer[] order = new Integer[size];
+        int measured = 0;
+        for (int i = 0; i < size; i++) {
+            if (histograms[i].total() > 0) {
+                order[measured++] = i;
+            }
+        }
+        Arrays.sort(order, 0, measured,
+                    (a, b) -> Long.compare(histograms[b].sum(), histograms[a].sum()));
+        MessageOutput.println("Latency summary", new Object [] {measured, classPattern});
+        if (measured == 0) {
+            return;
+        }
+        MessageOutput.println("Latency table header");
+        for (int i = 0; i < Math.min(TOP, measured); i++) {
+            Histogram h = histograms[order[i]];
+            Method method = methods[order[i]];
+            MessageOutput.printDirectln(String.format("%10d %10.3f %10.3f %10.3f %10.3f  %s.%s%s",
+                                                      h.total(),
+                                                      h.percentile(50) / 1e6,
+                                                      h.percentile(90) / 1e6,
+                                                      h.percentile(99) / 1e6,
+                                                      h.max() / 1e6,
+                                                      method.declaringType().name(),
+                                                      method.name(), method.signature()));
+        }
+        if (measured > TOP) {
+            MessageOutput.println("Latency more", new Object [] {measured - TOP});
+        }
+    }
+}
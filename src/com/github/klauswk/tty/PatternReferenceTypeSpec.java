@@ -36,6 +36,8 @@ package com.github.klauswk.tty;
 
 import com.sun.jdi.*;
 import com.sun.jdi.request.ClassPrepareRequest;
+import com.sun.jdi.request.EventRequest;
+import java.util.List;
 import java.util.StringTokenizer;
 
 
@@ -75,12 +77,28 @@ class PatternReferenceTypeSpec implements ReferenceTypeSpec {
         }
     }
 
+    @Override
+    public List<ReferenceType> loadedMatches() {
+        if (classId.startsWith("*")) {
+            return Env.loadedClasses().endingWith(stem);
+        } else if (classId.endsWith("*")) {
+            return Env.loadedClasses().startingWith(stem);
+        } else {
+            return Env.loadedClasses().byName(classId);
+        }
+    }
+
     @Override
     public ClassPrepareRequest createPrepareRequest() {
         ClassPrepareRequest request =
             Env.vm().eventRequestManager().createClassPrepareRequest();
         request.addClassFilter(classId);
-        request.addCountFilter(1);
+        /*
+         * Every thread waits while the deferred requests are set; with
+         * only the loading one stopped, another could already run the
+         * new class past a breakpoint that does not exist yet.
+         */
+        request.setSuspendPolicy(EventRequest.SUSPEND_ALL);
         return request;
     }
 
@@ -0,0 +1,263 @@
+package com.github.klauswk.tty;
+
+import com.sun.jdi.IncompatibleThreadStateException;
+import com.sun.jdi.Method;
+import com.sun.jdi.ObjectCollectedException;
+import com.sun.jdi.StackFrame;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.VirtualMachine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A stack-sampling profiler, for the "profile" command.
+ *
+ * Every interval the target VM is suspended, the stacks of the sampled
+ * threads are fetched with one frames() call each, and the VM is
+ * resumed. The samples form a call tree, printed as folded stacks
+ * ("outer;...;inner count", the input of flame graph tools), followed
+ * by the methods with the most samples on top of the stack (self) and
+ * anywhere on it (total).
+ *
+ * Samples are wall-clock: a blocked or waiting thread is counted like
+ * a running one. Each Method is named once and then known by an int,
+ * so a sample costs the frames() round trips and little else. If a
+ * pause nonetheless takes longer than the interval, the next sample is
+ * delayed by as much, keeping the target running at least half the
+ * time.
+ */
+class Profiler {
+
+    static final int DEFAULT_INTERVAL = 10;
+    static final int TOP = 20;
+
+    private static final class Node {
+        final int method;
+        long self = 0;
+        Map<Integer, Node> children = null;
+
+        Node(int method) {
+            this.method = method;
+        }
+
+        Node child(int method) {
+            if (children == null) {
+                children = new HashMap<>();
+            }
+            return children.computeIfAbsent(method, Node::new);
+        }
+    }
+
+    private final VirtualMachine vm;
+    private final long durationMillis;
+    private final long intervalMillis;
+
+    /* Sample only the threads whose name contains this, or only this thread. */
+    private final String threadName;
+    private final ThreadReference thread;
+
+    private final Node root = new Node(-1);
+
+    /* Method interning: Method to id, id to name, and per-id counts. */
+    private final Map<Method, Integer> methodIds = new HashMap<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private long[] selfCounts = new long[64];
+    private long[] totalCounts = new long[64];
+    private long[] lastSample = new long[64];
+
+    private final Map<ThreadReference, Boolean> sampled = new HashMap<>();
+
+    private long samples = 0;
+    private long stacks = 0;
+    private long pausedNanos = 0;
+
+    /* A node of the call tree still to be printed, and where its parent's path ends. */
+    private record Pending(Node node, int parentLength) {
+    }
+
+    Profiler(VirtualMachine vm, long durationMillis, long intervalMillis,
+             String threadName, ThreadReference thread) {
+        this.vm = vm;
+        this.durationMillis = durationMillis;
+        this.intervalMillis = intervalMillis;
+        this.threadName = threadName;
+        this.thread = thread;
+    }
+
+    void run() {
+        long end = System.currentTimeMillis() + durationMillis;
+        long next = System.currentTimeMillis();
+        while (next < end) {
+            long wait = next - System.currentTimeMillis();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            long pause = sample();
+            next += Math.max(intervalMillis, pause / 1_000_000L);
+        }
+        print();
+    }
+
+    /*
+     * Take one sample of every thread that passes the filter.
+     * @return how long the VM was suspended, in nanoseconds.
+     */
+    private long sample() {
+        List<ThreadInfo> threads = ThreadInfo.threads();
+        long start = System.nanoTime();
+        ThreadInfo.pauseStarted();
+        vm.suspend();
+        try {
+            samples++;
+            for (ThreadInfo ti : threads) {
+                ThreadReference thread = ti.getThread();
+                if (!isSampled(thread)) {
+                    continue;
+                }
+                List<StackFrame> frames;
+                try {
+                    frames = thread.frames();
+                } catch (IncompatibleThreadStateException | ObjectCollectedException e) {
+                    continue;   // not started yet, or gone
+                }
+                if (!frames.isEmpty()) {
+                    stacks++;
+                    add(frames);
+                }
+            }
+        } finally {
+            ThreadInfo.pauseEnded();
+            vm.resume();
+        }
+        long paused = System.nanoTime() - start;
+        pausedNanos += paused;
+        return paused;
+    }
+
+    private boolean isSampled(ThreadReference candidate) {
+        if (thread != null) {
+            return candidate.equals(thread);
+        }
+        if (threadName == null) {
+            return true;
+        }
+        return sampled.computeIfAbsent(candidate, t -> {
+            try {
+                return t.name().contains(threadName);
+            } catch (ObjectCollectedException e) {
+                return false;
+            }
+        });
+    }
+
+    private void add(List<StackFrame> frames) {
+        Node node = root;
+        // Walk from the outermost frame in.
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            int id = methodId(frames.get(i).location().method());
+            node = node.child(id);
+            if (lastSample[id] != stacks) {
+                // Count recursive methods once per stack.
+                lastSample[id] = stacks;
+                totalCounts[id]++;
+            }
+        }
+        node.self++;
+        selfCounts[node.method]++;
+    }
+
+    private int methodId(Method method) {
+        Integer id = methodIds.get(method);
+        if (id == null) {
+            String name = method.declaringType().name() + "." + method.name();
+            id = nameIds.get(name);
+            if (id == null) {
+                // Overloads share a name, and so an id.
+                id = names.size();
+                names.add(name);
+                nameIds.put(name, id);
+                if (id == selfCounts.length) {
+                    selfCounts = Arrays.copyOf(selfCounts, id * 2);
+                    totalCounts = Arrays.copyOf(totalCounts, id * 2);
+                    lastSample = Arrays.copyOf(lastSample, id * 2);
+                }
+            }
+            methodIds.put(method, id);
+        }
+        return id;
+    }
+
+    private void print() {
+        MessageOutput.println("Profile summary",
+                              new Object [] {samples, stacks,
+                                             (samples == 0) ? 0.0 :
+                                                 pausedNanos / 1e6 / samples});
+        if (stacks == 0) {
+            return;
+        }
+        MessageOutput.println();
+        printFolded();
+
+        Integer[] ids = new Integer[names.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+        Arrays.sort(ids, (a, b) -> selfCounts[a] != selfCounts[b]
+                                   ? Long.compare(selfCounts[b], selfCounts[a])
+                                   : Long.compare(totalCounts[b], totalCounts[a]));
+        MessageOutput.println();
+        MessageOutput.println("Profile table header");
+        for (int i = 0; i < Math.min(TOP, ids.length); i++) {
+            int id = ids[i];
+            MessageOutput.printDirectln(String.format("%8d %6.1f%% %8d %6.1f%%  %s",
+                                                      selfCounts[id],
+                                                      100.0 * selfCounts[id] / stacks,
+                                                      totalCounts[id],
+                                                      100.0 * totalCounts[id] / stacks,
+                                                      names.get(id)));
+        }
+    }
+
+    /*
+     * Print the call tree depth first, one line per node with samples
+     * of its own. Stacks can be deeper than the debugger's own, so the
+     * walk keeps its pending nodes on a heap stack instead of recursing.
+     */
+    private void printFolded() {
+        StringBuilder path = new StringBuilder();
+        ArrayDeque<Pending> pending = new ArrayDeque<>();
+        pushChildren(pending, root, 0);
+        while (!pending.isEmpty()) {
+            Pending next = pending.pop();
+            Node node = next.node();
+            // Everything past the parent's path belongs to an earlier sibling.
+            path.setLength(next.parentLength());
+            if (path.length() > 0) {
+                path.append(';');
+            }
+            path.append(names.get(node.method));
+            if (node.self > 0) {
+                MessageOutput.printDirectln(path + " " + node.self);
+            }
+            pushChildren(pending, node, path.length());
+        }
+    }
+
+    private static void pushChildren(ArrayDeque<Pending> pending, Node node, int length) {
+        if (node.children != null) {
+            for (Node child : node.children.values()) {
+                pending.push(new Pending(child, length));
+            }
+        }
+    }
+}
@@ -36,12 +36,23 @@ package com.github.klauswk.tty;
 
 import com.sun.jdi.*;
 import com.sun.jdi.request.ClassPrepareRequest;
+import java.util.List;
 
 interface ReferenceTypeSpec {
     /**
      * Does the specified ReferenceType match this spec.
      */
     boolean matches(ReferenceType refType);
+
+    /**
+     * The loaded types matching this spec, from Env.loadedClasses().
+     * The registry follows the VM only as fast as its class prepare
+     * events are handled; a class it learns about after the spec's
+     * prepare request is enabled is passed to
+     * EventRequestSpecList.resolveLate().
+     */
+    List<ReferenceType> loadedMatches();
+
     ClassPrepareRequest createPrepareRequest();
 
     @Override
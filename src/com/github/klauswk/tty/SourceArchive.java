@@ -0,0 +1,182 @@
+package com.github.klauswk.tty;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * A .jar or .zip on the source path, such as a Maven -sources.jar.
+ *
+ * The archive is opened as a zip file system and its .java entries are
+ * indexed once, when it is first opened. Opened archives are shared by
+ * all SourceMappers until the archive file itself changes. Entries are
+ * decompressed into memory on request; nothing is extracted to disk.
+ *
+ * An archive is reference counted: the cache holds one reference and
+ * every SourceMapper using it another, released by close(). Its file
+ * system stays open until the last one is gone, so a mapper keeps
+ * reading the archive it indexed even after the file was replaced.
+ */
+class SourceArchive {
+
+    private static final Map<Path, SourceArchive> openArchives = new ConcurrentHashMap<>();
+
+    private final Path archive;
+    private final long lastModified;
+    private final long size;
+    private final FileSystem fileSystem;
+    private int references = 1;
+
+    /* Package-relative name ("java/lang/String.java") to entry. */
+    private final Map<String, Path> entries;
+
+    private SourceArchive(Path archive, BasicFileAttributes attr,
+                          FileSystem fileSystem, Map<String, Path> entries) {
+        this.archive = archive;
+        this.lastModified = attr.lastModifiedTime().toMillis();
+        this.size = attr.size();
+        this.fileSystem = fileSystem;
+        this.entries = entries;
+    }
+
+    /**
+     * Return the archive at 'path', reusing the one already open if
+     * the file has not changed since. Return null if it can't be read.
+     * The caller must close() the archive once done with it.
+     */
+    static SourceArchive open(Path path) {
+        Path archive = path.toAbsolutePath().normalize();
+        BasicFileAttributes attr;
+        try {
+            attr = Files.readAttributes(archive, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+        SourceArchive cached = openArchives.get(archive);
+        if (cached != null) {
+            if (cached.lastModified == attr.lastModifiedTime().toMillis() &&
+                cached.size == attr.size() && cached.acquire()) {
+                return cached;
+            }
+            if (openArchives.remove(archive, cached)) {
+                cached.close();     // the cache's reference
+            }
+        }
+
+        FileSystem fs = null;
+        try {
+            fs = FileSystems.newFileSystem(archive);
+            Map<String, Path> entries = new HashMap<>();
+            for (Path dir : fs.getRootDirectories()) {
+                try (Stream<Path> tree = Files.walk(dir)) {
+                    tree.forEach(entry -> {
+                        String name = dir.relativize(entry).toString();
+                        if (name.endsWith(".java")) {
+                            entries.put(name, entry);
+                        }
+                    });
+                }
+            }
+            SourceArchive opened = new SourceArchive(archive, attr, fs, entries);
+            SourceArchive raced = openArchives.putIfAbsent(archive, opened);
+            if (raced == null) {
+                opened.acquire();
+                return opened;
+            }
+            if (!raced.acquire()) {
+                return opened;      // uncached; its one reference is the caller's
+            }
+            opened.close();
+            return raced;
+        } catch (IOException | UncheckedIOException | ProviderNotFoundException e) {
+            if (fs != null) {
+                try {
+                    fs.close();
+                } catch (IOException exc) {
+                }
+            }
+            return null;
+        }
+    }
+
+    /* Take a reference, unless the archive has already been closed. */
+    private synchronized boolean acquire() {
+        if (references == 0) {
+            return false;
+        }
+        references++;
+        return true;
+    }
+
+    /**
+     * Release a reference, closing the archive with the last one.
+     */
+    void close() {
+        synchronized (this) {
+            if (references == 0 || --references > 0) {
+                return;
+            }
+        }
+        try {
+            fileSystem.close();
+        } catch (IOException e) {
+            // Nothing more can be done.
+        }
+    }
+
+    Path archive() {
+        return archive;
+    }
+
+    /**
+     * @return the packaged .java entries of this archive.
+     */
+    List<SourceIndex.SourceEntry> entries() {
+        List<SourceIndex.SourceEntry> list = new ArrayList<>();
+        for (Map.Entry<String, Path> entry : entries.entrySet()) {
+            String name = entry.getKey();
+            if (name.indexOf('/') < 0) {
+                continue;
+            }
+            String className = name.substring(0, name.length() - ".java".length())
+                                   .replace('/', '.');
+            list.add(new SourceIndex.SourceEntry(className, entry.getValue(),
+                                                 lastModified, size));
+        }
+        return list;
+    }
+
+    boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * Return the decompressed content of entry 'name', or null if the
+     * archive has no such entry.
+     */
+    ByteBuffer read(String name) throws IOException {
+        Path entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        return ByteBuffer.wrap(Files.readAllBytes(entry)).asReadOnlyBuffer();
+    }
+
+    BufferedReader reader(String name) throws IOException {
+        Path entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        return new BufferedReader(new InputStreamReader(Files.newInputStream(entry)));
+    }
+}
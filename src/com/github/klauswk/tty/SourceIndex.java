@@ -0,0 +1,338 @@
+package com.github.klauswk.tty;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The .java files found under one sourcepath root.
+ *
+ * Roots are walked in parallel on the common fork-join pool, one task
+ * per directory. The result is persisted under ~/.kjb/index so the next
+ * session only has to stat what it already knows: a directory whose
+ * modification time is unchanged is not listed again, though each file
+ * recorded for it is still stat'ed, since editing a file in place does
+ * not touch its directory.
+ */
+class SourceIndex {
+
+    private static final int MAGIC = 0x4b4a4249;  // "KJBI"
+    private static final int FORMAT_VERSION = 1;
+    private static final Path CACHE_DIR =
+        Paths.get(System.getProperty("user.home"), ".kjb", "index");
+
+    /**
+     * A source file, with the class name it is expected to declare.
+     */
+    record SourceEntry(String className, Path path, long lastModified, long size) {
+    }
+
+    private record FileStamp(String name, long lastModified, long size) {
+    }
+
+    private record DirStamp(long lastModified, List<String> subdirs, List<FileStamp> files) {
+    }
+
+    private final Path root;
+
+    /* Nested roots; they are indexed by their own SourceIndex. */
+    private final Set<Path> nestedRoots;
+
+    /* Directory path relative to root, '/' separated, "" for the root itself. */
+    private final Map<String, DirStamp> dirs = new ConcurrentHashMap<>();
+
+    private volatile boolean dirty = false;
+
+    private SourceIndex(Path root, Set<Path> nestedRoots) {
+        this.root = root;
+        this.nestedRoots = nestedRoots;
+    }
+
+    /**
+     * Index every existing directory in 'roots' and save the results.
+     * A file below several roots belongs to the innermost one, since
+     * that one gives it the shortest (package) name.
+     */
+    static List<SourceIndex> build(List<Path> roots) {
+        List<Path> normalized = new ArrayList<>();
+        for (Path path : roots) {
+            Path abs = path.toAbsolutePath().normalize();
+            if (Files.isDirectory(abs) && !normalized.contains(abs)) {
+                normalized.add(abs);
+            }
+        }
+
+        List<SourceIndex> indexes = new ArrayList<>();
+        List<DirScan> scans = new ArrayList<>();
+        for (Path abs : normalized) {
+            Set<Path> nested = new HashSet<>();
+            for (Path other : normalized) {
+                if (!other.equals(abs) && other.startsWith(abs)) {
+                    nested.add(other);
+                }
+            }
+            SourceIndex index = new SourceIndex(abs, nested);
+            indexes.add(index);
+            scans.add(index.new DirScan("", abs, index.load()));
+        }
+
+        ForkJoinPool.commonPool().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(scans)));
+
+        for (SourceIndex index : indexes) {
+            index.save();
+        }
+        return indexes;
+    }
+
+    Path root() {
+        return root;
+    }
+
+    /**
+     * @return the source files of this root, in no particular order.
+     */
+    List<SourceEntry> entries() {
+        List<SourceEntry> entries = new ArrayList<>();
+        for (Map.Entry<String, DirStamp> dir : dirs.entrySet()) {
+            String relDir = dir.getKey();
+            for (FileStamp file : dir.getValue().files()) {
+                //For classes without a root, the compiler doesn't really handle well
+                if (relDir.isEmpty()) {
+                    MessageOutput.println("Source file without package", file.name());
+                    continue;
+                }
+                Path path = root.resolve(relDir).resolve(file.name());
+                entries.add(new SourceEntry(className(relDir, file.name()), path,
+                                            file.lastModified(), file.size()));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return every directory indexed for this root.
+     */
+    List<Path> directories() {
+        List<Path> list = new ArrayList<>();
+        for (String relDir : dirs.keySet()) {
+            list.add(relDir.isEmpty() ? root : root.resolve(relDir));
+        }
+        return list;
+    }
+
+    /**
+     * Describe a single file below this root as it is now on disk.
+     * Return null if it is not a packaged .java file or is gone.
+     */
+    SourceEntry entryFor(Path file) {
+        Path rel = root.relativize(file);
+        String fileName = file.getFileName().toString();
+        if (rel.getParent() == null || !fileName.endsWith(".java")) {
+            return null;
+        }
+        try {
+            BasicFileAttributes attr = Files.readAttributes(file, BasicFileAttributes.class,
+                                                            LinkOption.NOFOLLOW_LINKS);
+            if (!attr.isRegularFile()) {
+                return null;
+            }
+            String relDir = rel.getParent().toString().replace(File.separatorChar, '/');
+            return new SourceEntry(className(relDir, fileName), file,
+                                   attr.lastModifiedTime().toMillis(), attr.size());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    boolean isNestedRoot(Path dir) {
+        return nestedRoots.contains(dir);
+    }
+
+    private static String className(String relDir, String fileName) {
+        String name = relDir + "/" + fileName.substring(0, fileName.length() - ".java".length());
+        return name.replace("src/", "")
+                   .replace("test/", "")
+                   .replace('/', '.');
+    }
+
+    @SuppressWarnings("serial") // JDK implementation class
+    private class DirScan extends RecursiveAction {
+        private final String relDir;
+        private final Path dir;
+        private final Map<String, DirStamp> previous;
+
+        DirScan(String relDir, Path dir, Map<String, DirStamp> previous) {
+            this.relDir = relDir;
+            this.dir = dir;
+            this.previous = previous;
+        }
+
+        @Override
+        protected void compute() {
+            long lastModified;
+            try {
+                lastModified = Files.getLastModifiedTime(dir).toMillis();
+            } catch (IOException e) {
+                dirty = true;   // it went away
+                return;
+            }
+            DirStamp stamp = previous.get(relDir);
+            if (stamp == null || stamp.lastModified() != lastModified) {
+                stamp = list(lastModified);
+                dirty = true;
+            } else {
+                stamp = restat(stamp);
+            }
+            dirs.put(relDir, stamp);
+
+            List<DirScan> children = new ArrayList<>();
+            for (String sub : stamp.subdirs()) {
+                Path child = dir.resolve(sub);
+                if (!nestedRoots.contains(child)) {
+                    String childRel = relDir.isEmpty() ? sub : relDir + "/" + sub;
+                    children.add(new DirScan(childRel, child, previous));
+                }
+            }
+            invokeAll(children);
+        }
+
+        /*
+         * The directory is unchanged, but its files may have been
+         * rewritten in place; refresh the stamps of those that were.
+         */
+        private DirStamp restat(DirStamp stamp) {
+            List<FileStamp> files = new ArrayList<>(stamp.files().size());
+            boolean changed = false;
+            for (FileStamp file : stamp.files()) {
+                try {
+                    BasicFileAttributes attr = Files.readAttributes(dir.resolve(file.name()),
+                                                                    BasicFileAttributes.class,
+                                                                    LinkOption.NOFOLLOW_LINKS);
+                    FileStamp now = new FileStamp(file.name(), attr.lastModifiedTime().toMillis(),
+                                                  attr.size());
+                    changed |= !now.equals(file);
+                    files.add(now);
+                } catch (IOException e) {
+                    changed = true;     // it went away
+                }
+            }
+            if (!changed) {
+                return stamp;
+            }
+            dirty = true;
+            return new DirStamp(stamp.lastModified(), stamp.subdirs(), files);
+        }
+
+        private DirStamp list(long lastModified) {
+            List<String> subdirs = new ArrayList<>();
+            List<FileStamp> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path entry : stream) {
+                    BasicFileAttributes attr;
+                    try {
+                        attr = Files.readAttributes(entry, BasicFileAttributes.class,
+                                                    LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        continue;
+                    }
+                    String name = entry.getFileName().toString();
+                    if (attr.isDirectory()) {
+                        subdirs.add(name);
+                    } else if (attr.isRegularFile() && name.endsWith(".java")) {
+                        files.add(new FileStamp(name, attr.lastModifiedTime().toMillis(),
+                                                attr.size()));
+                    }
+                }
+            } catch (IOException e) {
+                // Unreadable; record it as empty.
+            }
+            return new DirStamp(lastModified, subdirs, files);
+        }
+    }
+
+    private Path cacheFile() {
+        String rootName = root.getFileName() == null ? "root" : root.getFileName().toString();
+        return CACHE_DIR.resolve(rootName + "-" +
+                                 Integer.toHexString(root.toString().hashCode()) + ".idx");
+    }
+
+    /*
+     * Read the directories saved by an earlier session. Any problem
+     * with the file just means starting from scratch.
+     */
+    private Map<String, DirStamp> load() {
+        Map<String, DirStamp> saved = new HashMap<>();
+        Path file = cacheFile();
+        if (!Files.isRegularFile(file)) {
+            return saved;
+        }
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION ||
+                !in.readUTF().equals(root.toString())) {
+                return saved;
+            }
+            int dirCount = in.readInt();
+            for (int i = 0; i < dirCount; i++) {
+                String relDir = in.readUTF();
+                long lastModified = in.readLong();
+                int subdirCount = in.readInt();
+                List<String> subdirs = new ArrayList<>(subdirCount);
+                for (int j = 0; j < subdirCount; j++) {
+                    subdirs.add(in.readUTF());
+                }
+                int fileCount = in.readInt();
+                List<FileStamp> files = new ArrayList<>(fileCount);
+                for (int j = 0; j < fileCount; j++) {
+                    files.add(new FileStamp(in.readUTF(), in.readLong(), in.readLong()));
+                }
+                saved.put(relDir, new DirStamp(lastModified, subdirs, files));
+            }
+        } catch (IOException e) {
+            saved.clear();
+        }
+        return saved;
+    }
+
+    private void save() {
+        if (!dirty) {
+            return;
+        }
+        Path file = cacheFile();
+        try {
+            Files.createDirectories(CACHE_DIR);
+            Path tmp = Files.createTempFile(CACHE_DIR, "index", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(root.toString());
+                out.writeInt(dirs.size());
+                for (Map.Entry<String, DirStamp> dir : dirs.entrySet()) {
+                    DirStamp stamp = dir.getValue();
+                    out.writeUTF(dir.getKey());
+                    out.writeLong(stamp.lastModified());
+                    out.writeInt(stamp.subdirs().size());
+                    for (String sub : stamp.subdirs()) {
+                        out.writeUTF(sub);
+                    }
+                    out.writeInt(stamp.files().size());
+                    for (FileStamp f : stamp.files()) {
+                        out.writeUTF(f.name());
+                        out.writeLong(f.lastModified());
+                        out.writeLong(f.size());
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            dirty = false;
+        } catch (IOException e) {
+            // The index is only a cache; the next session rescans.
+        }
+    }
+}
@@ -38,51 +38,43 @@ import com.sun.jdi.Location;
 import com.sun.jdi.AbsentInformationException;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
-import static java.nio.file.FileVisitResult.CONTINUE;
 
 class SourceMapper {
 
+    /* Source files up to this size are read into the heap. */
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+
     private final String[] dirs;
 
-    private final List<String> sourceFiles;
+    /* The source path as given, directories and archives alike. */
+    private final String[] elements;
+
+    private final List<SourceIndex> indexes;
+
+    private final List<SourceArchive> archives = new ArrayList<>();
 
-    private final List<Path> sourceFilesPath;
+    /* Every indexed source file, by path. */
+    private final Map<Path, SourceIndex.SourceEntry> sources = new ConcurrentHashMap<>();
+
+    private final SymbolIndex symbols = new SymbolIndex();
+
+    private SourceWatcher watcher = null;
 
     SourceMapper(List<String> sourcepath) {
           /*
            * sourcepath can arrive from the debuggee as a List.
          * (via PathSearchingVirtualMachine.classPath())
          */
-        List<String> dirList = new ArrayList<String>();
-        sourceFiles = new ArrayList<>(); 
-        sourceFilesPath = new ArrayList<>();
-        
-        for (String element : sourcepath) {
-            //XXX remove .jar and .zip files; we want only directories on
-            //the source path. (Bug ID 4186582)
-            if ( ! (element.endsWith(".jar") ||
-                    element.endsWith(".zip"))) {
-                dirList.add(element);
-            }
-        }
-        dirs = dirList.toArray(new String[0]);
-        
-        if (dirs.length > 0) {
-          Path path = Paths.get(dirs[0]);
-          File realFile = path.toFile();
-          if (realFile.exists()) {
-            try{
-              PrintFiles visitor = new PrintFiles(path, sourceFiles, sourceFilesPath);
-              Files.walkFileTree(path, visitor);
-            } catch (Exception e) {
-              e.printStackTrace();
-            }
-          }
-        }
+        elements = sourcepath.toArray(new String[0]);
+        dirs = directories(elements);
+        indexes = indexSourceFiles();
     }
 
     SourceMapper(String sourcepath) {
@@ -96,57 +88,147 @@ class SourceMapper {
          */
         StringTokenizer st = new StringTokenizer(sourcepath,
                                                  File.pathSeparator);
-        List<String> dirList = new ArrayList<String>();
-        sourceFiles = new ArrayList<>(); 
-        sourceFilesPath = new ArrayList<>();
+        List<String> list = new ArrayList<String>();
         while (st.hasMoreTokens()) {
-            String s = st.nextToken();
-            //XXX remove .jar and .zip files; we want only directories on
-            //the source path. (Bug ID 4186582)
-            if ( ! (s.endsWith(".jar") ||
-                    s.endsWith(".zip"))) {
-                dirList.add(s);
+            list.add(st.nextToken());
+        }
+        elements = list.toArray(new String[0]);
+        dirs = directories(elements);
+        indexes = indexSourceFiles();
+    }
+
+    private static boolean isArchive(String element) {
+        return element.endsWith(".jar") || element.endsWith(".zip");
+    }
+
+    private static String[] directories(String[] elements) {
+        List<String> dirList = new ArrayList<String>();
+        for (String element : elements) {
+            if (!isArchive(element)) {
+                dirList.add(element);
             }
         }
-        dirs = dirList.toArray(new String[0]);
-        if (dirs.length> 0) {
-          Path path = Paths.get(dirs[0]);
-          File realFile = path.toFile();
-          if (realFile.exists()) {
-            try{
-              PrintFiles visitor = new PrintFiles(path, sourceFiles, sourceFilesPath);
-              Files.walkFileTree(path, visitor);
-            } catch (Exception e) {
-              e.printStackTrace();
+        return dirList.toArray(new String[0]);
+    }
+
+    /*
+     * Index the .java files under every directory of the source path,
+     * and inside every archive on it.
+     */
+    private List<SourceIndex> indexSourceFiles() {
+        List<Path> roots = new ArrayList<>();
+        List<Path> archivePaths = new ArrayList<>();
+        for (String element : elements) {
+            try {
+                if (isArchive(element)) {
+                    archivePaths.add(Paths.get(element));
+                } else {
+                    roots.add(Paths.get(element));
+                }
+            } catch (InvalidPathException e) {
+                // Not usable; sourceFile() will skip it too.
             }
-          }
+        }
+        archivePaths.parallelStream()
+                    .map(SourceArchive::open)
+                    .forEachOrdered(archive -> {
+                        if (archive != null) {
+                            archives.add(archive);
+                        }
+                    });
+        for (SourceArchive archive : archives) {
+            for (SourceIndex.SourceEntry entry : archive.entries()) {
+                sources.put(entry.path(), entry);
+            }
+        }
+
+        List<SourceIndex> built = SourceIndex.build(roots);
+        for (SourceIndex index : built) {
+            for (SourceIndex.SourceEntry entry : index.entries()) {
+                sources.put(entry.path(), entry);
+            }
+        }
+        symbols.update(sources.values());
+        return built;
+    }
+
+    /**
+     * Start or stop following changes to the indexed directories.
+     */
+    synchronized void setWatching(boolean watch) {
+        if (watch && watcher == null) {
+            try {
+                watcher = new SourceWatcher(this, indexes);
+            } catch (IOException e) {
+                MessageOutput.println("Unable to watch source path:", e.toString());
+            }
+        } else if (!watch && watcher != null) {
+            watcher.close();
+            watcher = null;
         }
     }
 
+    /**
+     * Stop following and parsing the source path; this mapper is
+     * being replaced.
+     */
+    void close() {
+        setWatching(false);
+        symbols.close();
+        for (SourceArchive archive : archives) {
+            archive.close();
+        }
+    }
+
+    void sourceChanged(SourceIndex.SourceEntry entry) {
+        sources.put(entry.path(), entry);
+        symbols.update(List.of(entry));
+    }
+
+    /*
+     * Forget 'path', and everything below it if it was a directory.
+     */
+    void sourcesRemoved(Path path) {
+        sources.keySet().removeIf(p -> p.startsWith(path));
+        symbols.remove(path);
+    }
+
+    /**
+     * Return the declarations of the type 'className' found on the
+     * source path, or null if none declares it.
+     */
+    SymbolIndex.TypeSymbols typeSymbols(String className) {
+        return symbols.lookup(className);
+    }
+
     /*
      * Return the current sourcePath as a String.
      */
     String getSourcePath() {
         int i = 0;
         StringBuffer sp;
-        if (dirs.length < 1) {
+        if (elements.length < 1) {
             return "";          //The source path is empty.
         } else {
-            sp = new StringBuffer(dirs[i++]);
+            sp = new StringBuffer(elements[i++]);
         }
-        for (; i < dirs.length; i++) {
+        for (; i < elements.length; i++) {
             sp.append(File.pathSeparator);
-            sp.append(dirs[i]);
+            sp.append(elements[i]);
         }
         return sp.toString();
     }
 
     List<String> getSourceFiles() {
-      return this.sourceFiles;
+      List<String> list = new ArrayList<>(sources.size());
+      for (SourceIndex.SourceEntry entry : sources.values()) {
+        list.add(entry.className());
+      }
+      return list;
     }
 
     List<Path> getSourceFilesPath() {
-      return this.sourceFilesPath;
+      return new ArrayList<>(sources.keySet());
     }
 
     /**
@@ -155,11 +237,7 @@ class SourceMapper {
      */
     File sourceFile(Location loc) {
         try {
-            String filename = loc.sourceName();
-            String refName = loc.declaringType().name();
-            int iDot = refName.lastIndexOf('.');
-            String pkgName = (iDot >= 0)? refName.substring(0, iDot+1) : "";
-            String full = pkgName.replace('.', File.separatorChar) + filename;
+            String full = relativeSourceName(loc, File.separatorChar);
             for (int i= 0; i < dirs.length; ++i) {
                 File path = new File(dirs[i], full);
                 if (path.exists()) {
@@ -173,60 +251,89 @@ class SourceMapper {
     }
 
     /**
-     * Return a BufferedReader corresponding to the source
-     * of this location.
+     * Return the name of the source of this location relative to a
+     * source root, using 'separator' between package components.
+     */
+    static String relativeSourceName(Location loc, char separator)
+                                     throws AbsentInformationException {
+        String filename = loc.sourceName();
+        String refName = loc.declaringType().name();
+        int iDot = refName.lastIndexOf('.');
+        String pkgName = (iDot >= 0)? refName.substring(0, iDot+1) : "";
+        return pkgName.replace('.', separator) + filename;
+    }
+
+    /**
+     * Return a read-only buffer holding the raw bytes of the source
+     * of this location. Loose files larger than MAP_THRESHOLD are
+     * memory-mapped rather than read; reading such a buffer after the
+     * file was truncated throws InternalError.
      * Return null if not available.
-     * Note: returned reader must be closed.
      */
-    BufferedReader sourceReader(Location loc) {
+    ByteBuffer sourceBuffer(Location loc) throws IOException {
         File sourceFile = sourceFile(loc);
         if (sourceFile == null) {
-            return null;
+            return archiveBuffer(loc);
         }
+        try (FileChannel channel = FileChannel.open(sourceFile.toPath(),
+                                                    StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > MAP_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int)size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            }
+            return buffer.flip().asReadOnlyBuffer();
+        }
+    }
+
+    /*
+     * Archives are searched after all directories, since entries have
+     * to be decompressed to be read.
+     */
+    private SourceArchive archiveFor(Location loc) {
         try {
-            return new BufferedReader(new FileReader(sourceFile));
-        } catch(IOException exc) {
+            String name = relativeSourceName(loc, '/');
+            for (SourceArchive archive : archives) {
+                if (archive.contains(name)) {
+                    return archive;
+                }
+            }
+        } catch (AbsentInformationException e) {
         }
         return null;
     }
 
-    public static class PrintFiles
-            extends SimpleFileVisitor<Path> {
-
-        private final Path rootPath;
-        private final List<String> sourceFiles;
-        private final List<Path> sourceFilesPath;
-
-        public PrintFiles(Path rootPath, List<String> sourceFiles, List<Path> sourceFilesPath) {
-            this.rootPath = rootPath;
-            this.sourceFiles = sourceFiles;
-            this.sourceFilesPath = sourceFilesPath;
+    private ByteBuffer archiveBuffer(Location loc) throws IOException {
+        SourceArchive archive = archiveFor(loc);
+        if (archive == null) {
+            return null;
         }
+        try {
+            return archive.read(relativeSourceName(loc, '/'));
+        } catch (AbsentInformationException e) {
+            return null;
+        }
+    }
 
-        @Override
-        public FileVisitResult visitFile(Path file,
-                                         BasicFileAttributes attr) {
-            if (attr.isRegularFile() && file.toString().endsWith("java")) {
-                Path newPath = rootPath.relativize(file);
-
-                //For classes without a root, the compiler doesn't really handle well
-                if (!newPath.toString().contains("/")) {
-                  System.out.println("The class " + newPath.toString() + " doesn't have a package, ignoring the source file");
-                  return CONTINUE;
-                }
-
-                System.out.println("Adding file: " + file.toString());
-                
-                sourceFilesPath.add(file);
-                
-                sourceFiles.add(newPath.toString()
-                    .replaceAll("src/", "")
-                    .replaceAll("test/", "")
-                    .replaceAll(".java", "")
-                    .replaceAll("/", "."));
-
+    /**
+     * Return a BufferedReader corresponding to the source
+     * of this location.
+     * Return null if not available.
+     * Note: returned reader must be closed.
+     */
+    BufferedReader sourceReader(Location loc) {
+        File sourceFile = sourceFile(loc);
+        try {
+            if (sourceFile == null) {
+                SourceArchive archive = archiveFor(loc);
+                return (archive == null) ? null
+                                         : archive.reader(relativeSourceName(loc, '/'));
             }
-            return CONTINUE;
+            return new BufferedReader(new FileReader(sourceFile));
+        } catch(IOException | AbsentInformationException exc) {
         }
+        return null;
     }
 }
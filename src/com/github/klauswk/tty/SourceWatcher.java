@@ -0,0 +1,162 @@
+package com.github.klauswk.tty;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Keeps a SourceMapper's file list current while the debugger runs.
+ *
+ * Every indexed directory is registered with a WatchService (which is
+ * not recursive) and a daemon thread applies the create, modify and
+ * delete events to the mapper and to Env's source line cache.
+ */
+class SourceWatcher implements Runnable {
+
+    private final SourceMapper mapper;
+    private final WatchService service;
+    private final Thread thread;
+
+    /* Watched directory and the index its files belong to. */
+    private final Map<WatchKey, Path> keyDirs = new ConcurrentHashMap<>();
+    private final Map<Path, SourceIndex> dirIndexes = new ConcurrentHashMap<>();
+
+    private volatile boolean running = true;
+
+    /* Whether a directory has failed to register; reported only once. */
+    private volatile boolean registerFailed = false;
+
+    SourceWatcher(SourceMapper mapper, List<SourceIndex> indexes) throws IOException {
+        this.mapper = mapper;
+        this.service = FileSystems.getDefault().newWatchService();
+        for (SourceIndex index : indexes) {
+            for (Path dir : index.directories()) {
+                register(dir, index);
+            }
+        }
+        this.thread = new Thread(this, "source-watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    void close() {
+        running = false;
+        try {
+            service.close();
+        } catch (IOException e) {
+            // Nothing more can be done.
+        }
+    }
+
+    private void register(Path dir, SourceIndex index) {
+        try {
+            WatchKey key = dir.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            keyDirs.put(key, dir);
+            dirIndexes.put(dir, index);
+        } catch (NoSuchFileException e) {
+            // Gone already; its parent's delete event follows.
+        } catch (IOException e) {
+            // Most likely out of watches; the file list just won't follow it.
+            if (!registerFailed) {
+                registerFailed = true;
+                MessageOutput.println("Unable to watch source directory",
+                                      new Object [] {dir, e.getMessage()});
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+            Path dir = keyDirs.get(key);
+            if (dir != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    try {
+                        handleEvent(dir, event);
+                    } catch (RuntimeException e) {
+                        // Keep watching; a later event may describe the same change.
+                    }
+                }
+            }
+            if (!key.reset()) {
+                keyDirs.remove(key);
+                if (dir != null) {
+                    dirIndexes.remove(dir);
+                }
+            }
+        }
+    }
+
+    private void handleEvent(Path dir, WatchEvent<?> event) {
+        SourceIndex index = dirIndexes.get(dir);
+        if (index == null) {
+            return;
+        }
+        if (event.kind() == OVERFLOW) {
+            /*
+             * Events were lost. Pick up whatever is in this
+             * directory now; subdirectories have keys of their own.
+             */
+            try (Stream<Path> files = Files.list(dir)) {
+                files.forEach(file -> created(file, index));
+            } catch (IOException e) {
+                // Gone; its own delete event follows.
+            }
+            return;
+        }
+
+        Path path = dir.resolve((Path)event.context());
+        if (event.kind() == ENTRY_DELETE) {
+            mapper.sourcesRemoved(path);
+            Env.invalidateSource(path);
+        } else if (event.kind() == ENTRY_CREATE) {
+            created(path, index);
+        } else {
+            SourceIndex.SourceEntry entry = index.entryFor(path);
+            if (entry != null) {
+                mapper.sourceChanged(entry);
+                Env.invalidateSource(path);
+            }
+        }
+    }
+
+    private void created(Path path, SourceIndex index) {
+        if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            if (index.isNestedRoot(path)) {
+                return;
+            }
+            try (Stream<Path> tree = Files.walk(path)) {
+                tree.forEach(p -> {
+                    if (Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) {
+                        register(p, index);
+                    } else {
+                        SourceIndex.SourceEntry entry = index.entryFor(p);
+                        if (entry != null) {
+                            mapper.sourceChanged(entry);
+                        }
+                    }
+                });
+            } catch (IOException | UncheckedIOException e) {
+                // Removed again while we looked at it.
+            }
+        } else {
+            SourceIndex.SourceEntry entry = index.entryFor(path);
+            if (entry != null) {
+                mapper.sourceChanged(entry);
+                Env.invalidateSource(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.github.klauswk.tty;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The types declared by the files on the source path, with their
+ * methods, fields and line ranges, for completion when a class is not
+ * loaded in the target VM.
+ *
+ * Files are parsed on a small pool of daemon threads as soon as they
+ * are indexed, so a lookup from the input thread normally finds the
+ * result ready. A file is parsed again only when its modification time
+ * changes. A lookup for a type whose file is still queued parses that
+ * one file right away.
+ */
+class SymbolIndex {
+
+    /**
+     * A method or field, with the lines it spans.
+     */
+    record Member(String name, int beginLine, int endLine) {
+    }
+
+    /**
+     * A type declared in a source file.
+     */
+    record TypeSymbols(String className, Path file, int beginLine, int endLine,
+                       List<Member> methods, List<Member> fields) {
+    }
+
+    private record FileSymbols(long lastModified, List<TypeSymbols> types) {
+    }
+
+    private static final ExecutorService parsers;
+    static {
+        int count = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger next = new AtomicInteger();
+        parsers = Executors.newFixedThreadPool(count, runnable -> {
+            Thread thread = new Thread(runnable, "symbol-index-" + next.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    private static final ThreadLocal<JavaParser> parser = ThreadLocal.withInitial(() ->
+        new JavaParser(new ParserConfiguration()
+                           .setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_21)));
+
+    private final Map<Path, FileSymbols> files = new ConcurrentHashMap<>();
+
+    /* Fully qualified name ("a.b.Outer.Inner") to type. */
+    private final Map<String, TypeSymbols> types = new ConcurrentHashMap<>();
+
+    /* Simple name to the fully qualified names sharing it. */
+    private final Map<String, Set<String>> simpleNames = new ConcurrentHashMap<>();
+
+    /* Files waiting to be parsed. */
+    private final Map<Path, SourceIndex.SourceEntry> queued = new ConcurrentHashMap<>();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Parse, in the background, each entry whose file has changed
+     * since it was last parsed.
+     */
+    void update(Collection<SourceIndex.SourceEntry> entries) {
+        for (SourceIndex.SourceEntry entry : entries) {
+            FileSymbols current = files.get(entry.path());
+            if (current != null && current.lastModified() == entry.lastModified()) {
+                continue;
+            }
+            queued.put(entry.path(), entry);
+            parsers.execute(() -> {
+                if (!closed) {
+                    parseQueued(entry);
+                }
+            });
+        }
+    }
+
+    /**
+     * Forget 'path', and everything below it if it was a directory.
+     */
+    synchronized void remove(Path path) {
+        queued.keySet().removeIf(p -> p.startsWith(path));
+        Iterator<Map.Entry<Path, FileSymbols>> iter = files.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Path, FileSymbols> file = iter.next();
+            if (file.getKey().startsWith(path)) {
+                iter.remove();
+                unlink(file.getValue());
+            }
+        }
+    }
+
+    /**
+     * Stop parsing; queued files are dropped.
+     */
+    void close() {
+        closed = true;
+        queued.clear();
+    }
+
+    /**
+     * Return the type named 'name', given either fully qualified or by
+     * a dotted suffix of its name. Return null if no source declares it.
+     */
+    TypeSymbols lookup(String name) {
+        TypeSymbols symbols = find(name);
+        if (symbols == null) {
+            SourceIndex.SourceEntry entry = queuedEntry(name);
+            if (entry != null) {
+                parseQueued(entry);
+                symbols = find(name);
+            }
+        }
+        return symbols;
+    }
+
+    private TypeSymbols find(String name) {
+        TypeSymbols symbols = types.get(name);
+        if (symbols != null) {
+            return symbols;
+        }
+        Set<String> candidates = simpleNames.get(simpleName(name));
+        if (candidates != null) {
+            for (String candidate : candidates) {
+                if (candidate.endsWith("." + name)) {
+                    return types.get(candidate);
+                }
+            }
+        }
+        return null;
+    }
+
+    private SourceIndex.SourceEntry queuedEntry(String name) {
+        for (SourceIndex.SourceEntry entry : queued.values()) {
+            String className = entry.className();
+            if (className.equals(name) || className.endsWith("." + name)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * An entry stays queued until its result is stored, so a lookup
+     * racing with a background parse waits for it instead of missing.
+     */
+    private void parseQueued(SourceIndex.SourceEntry entry) {
+        synchronized (entry) {
+            if (queued.get(entry.path()) == entry) {
+                parse(entry);
+            }
+        }
+    }
+
+    private void parse(SourceIndex.SourceEntry entry) {
+        CompilationUnit unit;
+        try {
+            unit = parser.get().parse(entry.path()).getResult().orElse(null);
+        } catch (IOException | RuntimeException e) {
+            unit = null;
+        }
+        List<TypeSymbols> declared = new ArrayList<>();
+        if (unit != null) {
+            for (TypeDeclaration<?> type : unit.findAll(TypeDeclaration.class)) {
+                type.getFullyQualifiedName().ifPresent(name ->
+                    declared.add(symbols(name, entry.path(), type)));
+            }
+        }
+        store(entry, new FileSymbols(entry.lastModified(), declared));
+    }
+
+    private static TypeSymbols symbols(String name, Path file, TypeDeclaration<?> type) {
+        List<Member> methods = new ArrayList<>();
+        List<Member> fields = new ArrayList<>();
+        for (BodyDeclaration<?> member : type.getMembers()) {
+            if (member instanceof MethodDeclaration method) {
+                methods.add(member(method.getNameAsString(), method));
+            } else if (member instanceof FieldDeclaration field) {
+                for (VariableDeclarator var : field.getVariables()) {
+                    fields.add(member(var.getNameAsString(), field));
+                }
+            }
+        }
+        Range range = type.getRange().orElse(null);
+        return new TypeSymbols(name, file,
+                               range == null ? -1 : range.begin.line,
+                               range == null ? -1 : range.end.line,
+                               List.copyOf(methods), List.copyOf(fields));
+    }
+
+    private static Member member(String name, Node node) {
+        Range range = node.getRange().orElse(null);
+        return new Member(name,
+                          range == null ? -1 : range.begin.line,
+                          range == null ? -1 : range.end.line);
+    }
+
+    /*
+     * Only if 'entry' is still the one queued for its file: the file
+     * may have been removed, or queued again, while it was parsed.
+     */
+    private synchronized void store(SourceIndex.SourceEntry entry, FileSymbols symbols) {
+        Path path = entry.path();
+        if (closed || queued.get(path) != entry) {
+            return;
+        }
+        queued.remove(path);
+        FileSymbols previous = files.put(path, symbols);
+        if (previous != null) {
+            unlink(previous);
+        }
+        for (TypeSymbols type : symbols.types()) {
+            types.put(type.className(), type);
+            simpleNames.computeIfAbsent(simpleName(type.className()),
+                                        k -> ConcurrentHashMap.newKeySet())
+                       .add(type.className());
+        }
+    }
+
+    private void unlink(FileSymbols symbols) {
+        for (TypeSymbols type : symbols.types()) {
+            if (types.remove(type.className(), type)) {
+                Set<String> names = simpleNames.get(simpleName(type.className()));
+                if (names != null) {
+                    names.remove(type.className());
+                }
+            }
+        }
+    }
+
+    private static String simpleName(String name) {
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+}
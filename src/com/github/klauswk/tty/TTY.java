@@ -1,8 +1,5 @@
 package com.github.klauswk.tty;
 
-import com.github.javaparser.StaticJavaParser;
-import com.github.javaparser.ast.CompilationUnit;
-import com.github.javaparser.ast.body.MethodDeclaration;
 import com.sun.jdi.*;
 import com.sun.jdi.event.*;
 import com.sun.jdi.request.*;
@@ -86,7 +83,6 @@ public class TTY implements EventNotifier {
 
     @Override
     public void vmStartEvent(VMStartEvent se)  {
-        Thread.yield();  // fetch output
         MessageOutput.lnprint("VM Started:");
     }
 
@@ -116,7 +112,6 @@ public class TTY implements EventNotifier {
 
     @Override
     public void breakpointEvent(BreakpointEvent be)  {
-        Thread.yield();  // fetch output
         MessageOutput.lnprint("Breakpoint hit:");
         // Print breakpoint location and prompt if suspend policy is
         // SUSPEND_NONE or SUSPEND_EVENT_THREAD. In case of SUSPEND_ALL
@@ -135,7 +130,6 @@ public class TTY implements EventNotifier {
     public void fieldWatchEvent(WatchpointEvent fwe)  {
         Field field = fwe.field();
         ObjectReference obj = fwe.object();
-        Thread.yield();  // fetch output
 
         if (fwe instanceof ModificationWatchpointEvent) {
             MessageOutput.lnprint("Field access encountered before after",
@@ -149,13 +143,11 @@ public class TTY implements EventNotifier {
 
     @Override
     public void stepEvent(StepEvent se)  {
-        Thread.yield();  // fetch output
         MessageOutput.lnprint("Step completed:");
     }
 
     @Override
     public void exceptionEvent(ExceptionEvent ee) {
-        Thread.yield();  // fetch output
         Location catchLocation = ee.catchLocation();
         if (catchLocation == null) {
             MessageOutput.lnprint("Exception occurred uncaught",
@@ -169,7 +161,6 @@ public class TTY implements EventNotifier {
 
     @Override
     public void methodEntryEvent(MethodEntryEvent me) {
-        Thread.yield();  // fetch output
         /*
          * These can be very numerous, so be as efficient as possible.
          * If we are stopping here, then we will see the normal location
@@ -187,7 +178,6 @@ public class TTY implements EventNotifier {
 
     @Override
     public boolean methodExitEvent(MethodExitEvent me) {
-        Thread.yield();  // fetch output
         /*
          * These can be very numerous, so be as efficient as possible.
          */
@@ -236,7 +226,6 @@ public class TTY implements EventNotifier {
 
     @Override
     public void vmInterrupted() {
-        Thread.yield();  // fetch output
         printCurrentLocation();
         for (String cmd : monitorCommands) {
             StringTokenizer t = new StringTokenizer(cmd);
@@ -309,14 +298,20 @@ public class TTY implements EventNotifier {
           .collect(Collectors.toList());
       };
 
-      Supplier<Collection<String>> autoCompleteClasses = () -> {
-        List<String> sourceFiles = Env.getSourceFiles();
-        List<String> loadedClasses = Env.vm().allClasses().stream()
-          .map(spec -> spec.name())
-          .collect(Collectors.toList());
-
-        return Stream.concat(sourceFiles.stream(), loadedClasses.stream())
-          .collect(Collectors.toSet());
+      Completer classCompleter = (reader, line, candidates) -> {
+        String prefix = line.word().substring(0, line.wordCursor());
+        Set<String> names = new TreeSet<>();
+        for (String sourceFile : Env.getSourceFiles()) {
+          if (sourceFile.startsWith(prefix)) {
+            names.add(sourceFile);
+          }
+        }
+        if (Env.connection() != null && Env.connection().isOpen()) {
+          names.addAll(Env.loadedClasses().namesStartingWith(prefix));
+        }
+        for (String name : names) {
+          candidates.add(new Candidate(name));
+        }
       };
 
       Supplier<Collection<String>> autoCompleteMethods= () -> {
@@ -335,25 +330,15 @@ public class TTY implements EventNotifier {
           return methods;
         }
 
-        List<Path> sourceFiles = Env.getSourcePathFiles();
-
-        Optional<Path> source = sourceFiles.stream().filter(sf -> sf.toString().replaceAll("/", ".").contains(currentClassName)).findFirst();
+        SymbolIndex.TypeSymbols symbols = Env.getTypeSymbols(currentClassName);
 
+        if (symbols != null) {
+          List<String> methods = symbols.methods().stream()
+            .map(method -> currentClassName + "." + method.name())
+            .distinct()
+            .collect(Collectors.toList());
 
-        if (source.isPresent()) {
-          try {
-            CompilationUnit cunit = StaticJavaParser.parse(source.get());
-            List<String> methods = cunit.findAll(MethodDeclaration.class)
-              .stream()
-              .map(MethodDeclaration::getName)
-              .map(name -> name.toString())
-              .map(name -> currentClassName + "." + name)
-              .collect(Collectors.toList());
-
-            return methods;
-          } catch (IOException e) {
-            e.printStackTrace();
-          }
+          return methods;
         }
 
         return Collections.emptyList(); 
@@ -362,8 +347,6 @@ public class TTY implements EventNotifier {
 
       StringsCompleter breakPointCompleter = new StringsCompleter(autoCompleteOptions);
 
-      StringsCompleter classCompleter = new StringsCompleter(autoCompleteClasses);
-
       StringsCompleter methodCompleter = new StringsCompleter(autoCompleteMethods);
 
       Completer fileCompleter = new FileNameCompleter();
@@ -472,12 +455,14 @@ public class TTY implements EventNotifier {
         {"clear",        "y",         "n"},
         {"connectors",   "y",         "y"},
         {"cont",         "n",         "n"},
+        {"count",        "n",         "n"},
         {"dbgtrace",     "y",         "y"},
         {"disablegc",    "n",         "n"},
         {"down",         "n",         "y"},
         {"dump",         "n",         "y"},
         {"enablegc",     "n",         "n"},
         {"eval",         "n",         "y"},
+        {"eventoutput",  "y",         "y"},
         {"exclude",      "y",         "n"},
         {"exit",         "y",         "y"},
         {"extension",    "n",         "y"},
@@ -486,6 +471,7 @@ public class TTY implements EventNotifier {
         {"ignore",       "y",         "n"},
         {"interrupt",    "n",         "n"},
         {"kill",         "n",         "n"},
+        {"latency",      "n",         "n"},
         {"lines",        "n",         "y"},
         {"list",         "n",         "y"},
         {"locals",       "n",         "y"},
@@ -496,6 +482,7 @@ public class TTY implements EventNotifier {
         {"next",         "n",         "n"},
         {"pop",          "n",         "n"},
         {"print",        "n",         "y"},
+        {"profile",      "n",         "n"},
         {"quit",         "y",         "y"},
         {"read",         "y",         "y"},
         {"redefine",     "n",         "n"},
@@ -512,17 +499,20 @@ public class TTY implements EventNotifier {
         {"stop",         "y",         "n"},
         {"suspend",      "n",         "n"},
         {"thread",       "n",         "y"},
+        {"threaddump",   "n",         "y"},
         {"threadgroup",  "n",         "y"},
         {"threadgroups", "n",         "y"},
         {"threadlocks",  "n",         "y"},
         {"threads",      "n",         "y"},
         {"trace",        "n",         "n"},
+        {"tracequery",   "y",         "y"},
         {"unmonitor",    "n",         "n"},
         {"untrace",      "n",         "n"},
         {"unwatch",      "y",         "n"},
         {"up",           "n",         "y"},
         {"use",          "y",         "y"},
         {"version",      "y",         "y"},
+        {"vthreads",     "n",         "n"},
         {"watch",        "y",         "n"},
         {"where",        "n",         "y"},
         {"wherei",       "n",         "y"},
@@ -684,6 +674,14 @@ public class TTY implements EventNotifier {
                             evaluator.commandInterrupt(t);
                         } else if (cmd.equals("trace")) {
                             evaluator.commandTrace(t);
+                        } else if (cmd.equals("tracequery")) {
+                            evaluator.commandTraceQuery(t);
+                        } else if (cmd.equals("count")) {
+                            evaluator.commandCount(t);
+                        } else if (cmd.equals("latency")) {
+                            evaluator.commandLatency(t);
+                        } else if (cmd.equals("vthreads")) {
+                            evaluator.commandVThreads(t);
                         } else if (cmd.equals("untrace")) {
                             evaluator.commandUntrace(t);
                         } else if (cmd.equals("where")) {
@@ -737,6 +735,9 @@ public class TTY implements EventNotifier {
                             showPrompt = false;        // asynchronous command
                         } else if (cmd.equals("threadlocks")) {
                             evaluator.commandThreadlocks(t);
+                        } else if (cmd.equals("threaddump")) {
+                            evaluator.commandThreadDump(t);
+                            showPrompt = false;        // asynchronous command
                         } else if (cmd.equals("disablegc")) {
                             evaluator.commandDisableGC(t);
                             showPrompt = false;        // asynchronous command
@@ -762,6 +763,11 @@ public class TTY implements EventNotifier {
                             readCommand(t);
                         } else if (cmd.equals("dbgtrace")) {
                             evaluator.commandDbgTrace(t);
+                        } else if (cmd.equals("profile")) {
+                            evaluator.commandProfile(t);
+                            showPrompt = false;        // asynchronous command
+                        } else if (cmd.equals("eventoutput")) {
+                            evaluator.commandEventOutput(t);
                         } else if (cmd.equals("help") || cmd.equals("?")) {
                             help();
                         } else if (cmd.equals("version")) {
@@ -928,6 +934,7 @@ public class TTY implements EventNotifier {
 
             while (true) {
                 String ln = null;
+                MessageOutput.flush();
                 try {
                   if (showPrompt) {
                     ln = lineReader.readLine(linePrefix).trim();
@@ -74,11 +74,15 @@ public class TTYResources extends java.util.ListResourceBundle {
         {"Array element is not a method", "Array element is not a method"},
         {"Array index must be a integer type", "Array index must be a integer type"},
         {"base directory:", "base directory: {0}"},
+        {"Breakpoint condition failed", "Breakpoint condition {0} failed: {1}"},
+        {"Breakpoint condition invokes", "A breakpoint condition cannot call methods or constructors: {0}"},
+        {"Breakpoint condition not boolean", "Breakpoint condition {0} is not boolean: {1}"},
+        {"Breakpoint condition with go", "A breakpoint condition cannot be used with \"go\""},
         {"Breakpoint hit:", "Breakpoint hit: "},
         {"breakpoint", "breakpoint {0}"},
         {"Breakpoints set:", "Breakpoints set:"},
         {"Breakpoints can be located only in classes.", "Breakpoints can be located only in classes.  {0} is an interface or array."},
-        {"Can only trace", "Can only trace 'methods' or 'method exit' or 'method exits'"},
+        {"Can only trace", "Can only trace 'methods' or 'method exit' or 'method exits', or record 'methods'"},
         {"cannot redefine existing connection", "{0} cannot redefine existing connection"},
         {"Cannot assign to a method invocation", "Cannot assign to a method invocation"},
         {"Cannot specify command line with connector:", "Cannot specify command line with connector: {0}"},
@@ -108,12 +112,39 @@ public class TTYResources extends java.util.ListResourceBundle {
         {"Current thread not set.", "Current thread not set."},
         {"dbgtrace flag value must be an integer:", "dbgtrace flag value must be an integer: {0}"},
         {"dbgtrace command value must be an integer:", "dbgtrace command value must be an integer: {0}"},
+        {"vthread sample rate must be a positive integer:", "vthread sample rate must be a positive integer: {0}"},
         {"Deferring.", "Deferring {0}.\nIt will be set after the class is loaded."},
         {"End of stack.", "End of stack."},
         {"EOF", "EOF"},
         {"Error popping frame", "Error popping frame - {0}"},
         {"Error reading file", "Error reading ''{0}'' - {1}"},
         {"Error redefining class to file", "Error redefining {0} to {1} - {2}"},
+        {"Event output dropped", "[{0,number,integer} event message(s) dropped: output queue full]"},
+        {"eventoutput settings", "Event output: {0} when full, capacity {1,number,integer}, {2,number,integer} queued"},
+        {"eventoutput usage", "Usage: eventoutput [block|drop] [<capacity>]"},
+        {"profile usage", "Usage: profile <seconds> [interval-ms] [thread <name part> | t@<thread id>]"},
+        {"count usage", "Usage: count [methods <class pattern> [seconds] | stop]"},
+        {"Counting method calls", "Counting calls to the methods of {0}"},
+        {"Counting method calls for", "Counting calls to the methods of {0} for {1,number,integer} s"},
+        {"Not counting method calls.", "Not counting method calls."},
+        {"Method count summary", "{0,number,integer} call(s) to {1,number,integer} method(s) of {2} in {3,number,#0.0} s:"},
+        {"Method count more", "... and {0,number,integer} more method(s)"},
+        {"latency usage", "Usage: latency [<class pattern> | stop]"},
+        {"Measuring method latency", "Measuring the latency of the methods of {0}"},
+        {"Not measuring method latency.", "Not measuring method latency."},
+        {"Latency summary", "Latency of {0,number,integer} method(s) of {1}:"},
+        {"Latency table header", "     calls   p50 (ms)   p90 (ms)   p99 (ms)   max (ms)  method"},
+        {"Latency more", "... and {0,number,integer} more measured method(s)"},
+        {"vthreads usage", "Usage: vthreads [<sample rate> | stop]"},
+        {"Sampling vthreads", "Sampling 1 in {0,number,integer} virtual thread start(s)"},
+        {"Not sampling vthreads.", "Not sampling virtual threads."},
+        {"Unable to sample vthreads", "Unable to sample virtual thread starts: no start method in {0}"},
+        {"VThread sample summary", "Virtual threads, 1 in {0,number,integer} start(s) sampled for {1,number,#0.0} s: ~{2,number,integer} started, ~{3,number,integer} ended, ~{4,number,integer} live, ~{5,number,integer} peak live"},
+        {"VThread sample table header", "   started      ended       live       peak  creating frame"},
+        {"VThread sample more", "... and {0,number,integer} more creating frame(s)"},
+        {"Profiling", "Profiling for {0,number,integer} s, sampling every {1,number,integer} ms..."},
+        {"Profile summary", "Profile: {0,number,integer} sample(s), {1,number,integer} stack(s), target suspended {2,number,#0.00} ms per sample"},
+        {"Profile table header", "    self             total            method"},
         {"exceptionSpec all", "all {0}"},
         {"exceptionSpec caught", "caught {0}"},
         {"exceptionSpec uncaught", "uncaught {0}"},
@@ -159,6 +190,7 @@ public class TTYResources extends java.util.ListResourceBundle {
         {"Invalid connect type", "Invalid connect type"},
         {"Invalid consecutive invocations", "Invalid consecutive invocations"},
         {"Invalid exception object", "Invalid exception object"},
+        {"Invalid frame range", "Invalid frame range: {0} (expected <from>..<to>)"},
         {"Invalid line number specified", "Invalid line number specified"},
         {"Invalid <method_name> specification:", "Invalid <method_name> specification: {0}"},
         {"Invalid option on class command", "Invalid option on class command"},
@@ -202,6 +234,7 @@ public class TTYResources extends java.util.ListResourceBundle {
         {"Missing at or in", "Missing \"at\" or \"in\""},
         {"Monitor information for thread", "Monitor information for thread {0}:"},
         {"Monitor information for expr", "Monitor information for {0} ({1}):"},
+        {"More frames", "  ... {0,number,integer} more frames; \"where {1,number,#}..{2,number,#}\" to show them"},
         {"More than one class named", "More than one class named: ''{0}''"},
         {"native method", "native method"},
         {"nested:", "nested: {0}"},
@@ -234,6 +267,7 @@ public class TTYResources extends java.util.ListResourceBundle {
         {"No sourcedebugextension specified", "No SourceDebugExtension specified"},
         {"No sourcepath specified.", "No sourcepath specified."},
         {"No thread specified.", "No thread specified."},
+        {"No vthread sample rate specified.", "No vthread sample rate specified."},
         {"No VM connected", "No VM connected"},
         {"No waiters", "  No waiters"},
         {"not a class", "{0} is not a class"},
@@ -252,7 +286,7 @@ public class TTYResources extends java.util.ListResourceBundle {
         {"Parse exception:", "Parse Exception: {0}"},
         {"printclearcommandusage", "Usage clear <class>:<line_number> or\n      clear <class>.<method_name>[(argument_type,...)]"},
         {"printstopcommandusage",
-         "Usage: stop [go|thread] [<thread_id>] <at|in> <location>\n" +
+         "Usage: stop [go|thread] [<thread_id>] <at|in> <location> [if <expr>]\n" +
          "  If \"go\" is specified, immediately resume after stopping\n" +
          "  If \"thread\" is specified, only suspend the thread we stop in\n" +
          "  If neither \"go\" nor \"thread\" are specified, suspend all threads\n" +
@@ -260,19 +294,23 @@ public class TTYResources extends java.util.ListResourceBundle {
          "  \"at\" and \"in\" have the same meaning\n" +
          "  <location> can either be a line number or a method:\n" +
          "    <class_id>:<line_number>\n" +
-         "    <class_id>.<method>[(argument_type,...)]"
+         "    <class_id>.<method>[(argument_type,...)]\n" +
+         "  If \"if <expr>\" is given, only stop when the boolean <expr> is true;\n" +
+         "  <expr> cannot call methods or constructors, nor concatenate objects to strings"
         },
         {"Removed:", "Removed: {0}"},
         {"repeat is on", "Repeat is on"},
         {"repeat is off", "Repeat is off"},
         {"repeat usage", "Usage: repeat <on|off>"},
         {"Requested stack frame is no longer active:", "Requested stack frame is no longer active: {0,number,integer}"},
+        {"Resolved deferred requests", "Resolved deferred requests: {0,number,integer} set, {1,number,integer} waiting for their class, {2,number,integer} failed"},
         {"run <args> command is valid only with launched VMs", "'run <args>' command is valid only with launched VMs"},
         {"run", "run {0}"},
         {"saved", "{0} saved"},
         {"Set deferred", "Set deferred {0}"},
         {"Set", "Set {0}"},
         {"Source file not found:", "Source file not found: {0}"},
+        {"Source file without package", "The class {0} doesn''t have a package, ignoring the source file"},
         {"source line number and line", "{0,number,integer}    {1}"},
         {"source line number current line and line", "{0,number,integer} => {1}"},
         {"sourcedebugextension", "SourceDebugExtension -- {0}"},
@@ -281,6 +319,7 @@ public class TTYResources extends java.util.ListResourceBundle {
         {"Specify file name for class", "Specify file name for class {0}"},
         {"stack frame dump with pc", "  [{0,number,integer}] {1}.{2} ({3}), pc = {4}"},
         {"stack frame dump", "  [{0,number,integer}] {1}.{2} ({3})"},
+        {"Still deferred", "Still deferred {0}"},
         {"Step completed:", "Step completed: "},
         {"Stopping due to deferred breakpoint errors.", "Stopping due to deferred breakpoint errors.\n"},
         {"subclass:", "subclass: {0}"},
@@ -298,6 +337,11 @@ public class TTYResources extends java.util.ListResourceBundle {
         {"Thread is not running (no stack).", "Thread is not running (no stack)."},
         {"Thread number not specified.", "Thread number not specified."},
         {"Thread:", "{0}:"},
+        {"Thread dump group", "{0,number,integer} thread(s) {1}: {2}"},
+        {"Thread dump more names", ", ... and {0,number,integer} more"},
+        {"Thread dump summary", "{0,number,integer} thread(s), {1,number,integer} distinct stack(s), VM suspended for {2,number,integer} ms"},
+        {"Thread dump written", "Thread dump of {0,number,integer} thread(s) written to {1}"},
+        {"threaddump usage", "Usage: threaddump [jstack [<file>]]"},
         {"Thread Group:", "Group {0}:"},
         {"Thread description name unknownStatus BP",  "  {0} {1} unknown (at breakpoint)"},
         {"Thread description name unknownStatus",     "  {0} {1} unknown"},
@@ -324,11 +368,21 @@ public class TTYResources extends java.util.ListResourceBundle {
         {"trace go method exits in effect", "trace go method exits in effect"},
         {"trace go methods in effect", "trace go methods in effect"},
         {"trace not in effect", "trace not in effect"},
+        {"trace record methods in effect", "trace record methods in effect, recording to {0}"},
+        {"Trace recorded", "Recorded {0,number,integer} method event(s) to {1}"},
+        {"Trace summary", "Trace {0}: {1,number,integer} of {2,number,integer} recorded event(s) retained"},
+        {"Trace summary header", "   entries      calls     total (ms)     avg (ms)     max (ms)  method"},
+        {"tracequery usage", "Usage: tracequery [file <path>] [thread <name>] [method <name>] [top <n>] [events <n>]"},
+        {"Unable to read trace file", "Unable to read trace file {0}: {1}"},
+        {"Unable to write thread dump", "Unable to write thread dump {0}: {1}"},
+        {"Unable to write trace file", "Unable to write trace file {0}: {1}"},
         {"Unable to attach to target VM.", "Unable to attach to target VM."},
         {"Unable to display process output:", "Unable to display process output: {0}"},
         {"Unable to launch target VM.", "Unable to launch target VM."},
         {"Unable to set deferred", "Unable to set deferred {0} : {1}"},
         {"Unable to set main class and arguments", "Unable to set main class and arguments"},
+        {"Unable to watch source path:", "Unable to watch source path: {0}"},
+        {"Unable to watch source directory", "Unable to watch source directory {0}: {1}; directories that cannot be watched are not followed"},
         {"Unable to set", "Unable to set {0} : {1}"},
         {"Unexpected event type", "Unexpected event type: {0}"},
         {"unknown", "unknown"},
@@ -359,8 +413,14 @@ public class TTYResources extends java.util.ListResourceBundle {
              "thread <thread id>        -- set default thread\n" +
              "suspend [thread id(s)]    -- suspend threads (default: all)\n" +
              "resume [thread id(s)]     -- resume threads (default: all)\n" +
-             "where [<thread id> | all] -- dump a thread's stack\n" +
-             "wherei [<thread id> | all]-- dump a thread's stack, with pc info\n" +
+             "where [<thread id> | all] [<from>..<to>]\n" +
+             "                          -- dump a thread's stack\n" +
+             "                          -- without <from>..<to>, dump up to 200 frames from the current one\n" +
+             "wherei [<thread id> | all] [<from>..<to>]\n" +
+             "                          -- dump a thread's stack, with pc info\n" +
+             "threaddump [jstack [<file>]]\n" +
+             "                          -- dump the stacks of all threads, grouping identical ones,\n" +
+             "                          -- or each in jstack format, to the terminal or a file\n" +
              "up [n frames]             -- move up a thread's stack\n" +
              "down [n frames]           -- move down a thread's stack\n" +
              "kill <thread id> <expr>   -- kill a thread with the given exception object\n" +
@@ -381,7 +441,7 @@ public class TTYResources extends java.util.ListResourceBundle {
              "threadgroup <name>        -- set current threadgroup to <name>\n" +
              "threadgroup               -- set current threadgroup back to the top level threadgroup\n" +
              "\n" +
-             "stop [go|thread] [<thread_id>] <at|in> <location>\n" +
+             "stop [go|thread] [<thread_id>] <at|in> <location> [if <expr>]\n" +
              "                          -- set a breakpoint\n" +
              "                          -- if no options are given, the current list of breakpoints is printed\n" +
              "                          -- if \"go\" is specified, immediately resume after stopping\n" +
@@ -392,6 +452,7 @@ public class TTYResources extends java.util.ListResourceBundle {
              "                          -- <location> can either be a line number or a method:\n" +
              "                          --   <class_id>:<line_number>\n" +
              "                          --   <class_id>.<method>[(argument_type,...)]\n" +
+             "                          -- if \"if <expr>\" is given, only stop when the boolean <expr> is true\n" +
              "clear <class id>.<method>[(argument_type,...)]\n" +
              "                          -- clear a breakpoint in a method\n" +
              "clear <class id>:<line>   -- clear a breakpoint at a line\n" +
@@ -410,7 +471,23 @@ public class TTYResources extends java.util.ListResourceBundle {
              "trace [go] method exit | exits [thread]\n" +
              "                          -- trace the current method's exit, or all methods' exits\n" +
              "                          -- All threads are suspended unless 'go' is specified\n" +
+             "trace record [<file>] methods [thread]\n" +
+             "                          -- record method entries and exits to a file without\n" +
+             "                          -- suspending (default file kjb-trace.bin)\n" +
              "untrace [methods]         -- stop tracing method entries and/or exits\n" +
+             "count methods <class pattern> [seconds]\n" +
+             "                          -- count calls to the methods of matching classes without\n" +
+             "                          -- suspending, until 'count stop' or for the given time\n" +
+             "count [stop]              -- print the method call counts [and stop counting]\n" +
+             "latency <class pattern>   -- measure the time spent in the methods of matching\n" +
+             "                          -- classes without suspending\n" +
+             "latency [stop]            -- print p50/p90/p99/max per method [and stop measuring]\n" +
+             "vthreads <sample rate>    -- sample 1 in <sample rate> virtual thread starts, estimating\n" +
+             "                          -- started, ended, live and peak counts per creating frame\n" +
+             "vthreads [stop]           -- print the virtual thread estimates [and stop sampling]\n" +
+             "tracequery [file <path>] [thread <name>] [method <name>] [top <n>] [events <n>]\n" +
+             "                          -- summarize time per method in a trace recording,\n" +
+             "                          -- or list its last <n> events\n" +
              "step                      -- execute current line\n" +
              "step up                   -- execute until the current method returns to its caller\n" +
              "stepi                     -- execute current instruction\n" +
@@ -447,6 +524,15 @@ public class TTYResources extends java.util.ListResourceBundle {
              "# <command>               -- discard (no-op)\n" +
              "help (or ?)               -- list commands\n" +
              "dbgtrace [flag]           -- same as dbgtrace command line option\n" +
+             "eventoutput [block|drop] [<capacity>]\n" +
+             "                          -- show or set how event output is queued for printing:\n" +
+             "                          -- when the queue is full, wait for it (block) or discard\n" +
+             "                          -- the output of events that did not stop (drop)\n" +
+             "profile <seconds> [interval-ms] [thread <name part> | t@<thread id>]\n" +
+             "                          -- sample thread stacks for a while, then print them as\n" +
+             "                          -- folded stacks and the methods most often seen;\n" +
+             "                          -- \"thread\" samples the threads whose name contains\n" +
+             "                          -- <name part>, t@<thread id> only that thread\n" +
              "version                   -- print version information\n" +
              "exit (or quit)            -- exit debugger\n" +
              "\n" +
@@ -478,6 +564,11 @@ public class TTYResources extends java.util.ListResourceBundle {
              "                      connect to target VM using named connector with listed argument values\n" +
              "    -dbgtrace [flags] print info for debugging {0}\n" +
              "    -trackallthreads  Track all threads, including virtual threads.\n" +
+             "    -samplevthreads <rate>\n" +
+             "                      instead of tracking all virtual threads, sample 1 in <rate> of their starts\n" +
+             "                      and estimate how many are started, ended and live (see ''vthreads'')\n" +
+             "    -watchsources     follow changes to the files on the source path while debugging\n" +
+             "    -threadedevents   handle events that suspend only their thread concurrently, one virtual thread per target thread\n" +
              "    -tclient          run the application in the HotSpot(TM) Client Compiler\n" +
              "    -tserver          run the application in the HotSpot(TM) Server Compiler\n" +
              "    -R<option>        forward <option> to debuggee process if launched by jdb, otherwise ignored\n" +
@@ -0,0 +1,301 @@
+package com.github.klauswk.tty;
+
+import com.sun.jdi.AbsentInformationException;
+import com.sun.jdi.IncompatibleThreadStateException;
+import com.sun.jdi.Location;
+import com.sun.jdi.Method;
+import com.sun.jdi.MonitorInfo;
+import com.sun.jdi.ObjectCollectedException;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.StackFrame;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.VirtualMachine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dumps the stacks of all threads, for the "threaddump" command.
+ *
+ * The target VM is suspended once, and the stacks are fetched by up to
+ * WORKERS threads at a time, so the requests overlap on the connection
+ * instead of waiting for each other. By default threads with the same
+ * state and the same frames are grouped, and each group is printed
+ * once with its size and thread names, largest first. In jstack mode
+ * every thread is printed in the format of the jstack tool, with the
+ * monitors it holds and waits for, to the terminal or to a file.
+ */
+class ThreadDump {
+
+    static final int WORKERS = 8;
+    static final int NAMES_SHOWN = 10;
+
+    /* A monitor held by the frame at 'depth'. */
+    private record Owned(int depth, ObjectReference monitor) {
+    }
+
+    /* What was fetched of one thread. */
+    private static final class Snapshot {
+        final ThreadReference thread;
+        String name;
+        int status;
+        List<Location> frames = Collections.emptyList();
+        List<Owned> owned = Collections.emptyList();
+        ObjectReference contended = null;
+
+        Snapshot(ThreadReference thread) {
+            this.thread = thread;
+        }
+    }
+
+    /* The frames and state threads are grouped by. */
+    private static final class Stack {
+        final String state;
+        final List<Location> frames;
+        final int hash;
+        final List<Snapshot> threads = new ArrayList<>();
+
+        Stack(String state, List<Location> frames) {
+            this.state = state;
+            this.frames = frames;
+            this.hash = 31 * state.hashCode() + frames.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof Stack other) && hash == other.hash &&
+                   state.equals(other.state) && frames.equals(other.frames);
+        }
+    }
+
+    private final VirtualMachine vm;
+    private final boolean jstack;
+    private final Path file;
+
+    private long pausedMillis = 0;
+
+    ThreadDump(VirtualMachine vm, boolean jstack, Path file) {
+        this.vm = vm;
+        this.jstack = jstack;
+        this.file = file;
+    }
+
+    void run() {
+        List<Snapshot> snapshots = fetch(ThreadInfo.threads());
+        if (!jstack) {
+            printGrouped(snapshots);
+        } else if (file == null) {
+            MessageOutput.printDirect(jstackText(snapshots));
+        } else {
+            try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                out.write(jstackText(snapshots));
+            } catch (IOException e) {
+                MessageOutput.println("Unable to write thread dump", new Object [] {file.toString(),
+                                                                                  e.toString()});
+                return;
+            }
+            MessageOutput.println("Thread dump written", new Object [] {snapshots.size(),
+                                                                        file.toString()});
+        }
+    }
+
+    /*
+     * Fetch every thread with the VM suspended, WORKERS threads at a time.
+     */
+    private List<Snapshot> fetch(List<ThreadInfo> threads) {
+        List<Snapshot> snapshots = new ArrayList<>(threads.size());
+        if (threads.isEmpty()) {
+            return snapshots;
+        }
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(WORKERS, threads.size()),
+                                                               runnable -> {
+            Thread thread = new Thread(runnable, "threaddump-" + next.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        boolean monitors = jstack && vm.canGetMonitorFrameInfo();
+        boolean contended = jstack && vm.canGetCurrentContendedMonitor();
+        long start = System.currentTimeMillis();
+        ThreadInfo.pauseStarted();
+        vm.suspend();
+        try {
+            List<Future<Snapshot>> futures = new ArrayList<>(threads.size());
+            for (ThreadInfo ti : threads) {
+                ThreadReference thread = ti.getThread();
+                futures.add(workers.submit(() -> snapshot(thread, monitors, contended)));
+            }
+            for (Future<Snapshot> future : futures) {
+                Snapshot snapshot = future.get();
+                if (snapshot != null) {
+                    snapshots.add(snapshot);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            workers.shutdownNow();
+            ThreadInfo.pauseEnded();
+            vm.resume();
+        }
+        pausedMillis = System.currentTimeMillis() - start;
+        return snapshots;
+    }
+
+    /* @return the thread as it is now, or null if it is gone. */
+    private static Snapshot snapshot(ThreadReference thread, boolean monitors, boolean contended) {
+        Snapshot s = new Snapshot(thread);
+        try {
+            s.name = thread.name();
+            s.status = thread.status();
+            if (s.status == ThreadReference.THREAD_STATUS_ZOMBIE) {
+                return null;
+            }
+            List<StackFrame> frames = thread.frames();
+            List<Location> locations = new ArrayList<>(frames.size());
+            for (StackFrame frame : frames) {
+                locations.add(frame.location());
+            }
+            s.frames = locations;
+            if (monitors) {
+                // A MonitorInfo is only valid while the thread is suspended.
+                List<MonitorInfo> infos = thread.ownedMonitorsAndFrames();
+                s.owned = new ArrayList<>(infos.size());
+                for (MonitorInfo info : infos) {
+                    s.owned.add(new Owned(info.stackDepth(), info.monitor()));
+                }
+            }
+            if (contended) {
+                s.contended = thread.currentContendedMonitor();
+            }
+        } catch (IncompatibleThreadStateException e) {
+            // Not started yet; no frames.
+        } catch (ObjectCollectedException e) {
+            return null;
+        }
+        return s;
+    }
+
+    private static String state(int status) {
+        return switch (status) {
+            case ThreadReference.THREAD_STATUS_RUNNING -> "RUNNABLE";
+            case ThreadReference.THREAD_STATUS_SLEEPING -> "TIMED_WAITING (sleeping)";
+            case ThreadReference.THREAD_STATUS_MONITOR -> "BLOCKED (on object monitor)";
+            case ThreadReference.THREAD_STATUS_WAIT -> "WAITING";
+            case ThreadReference.THREAD_STATUS_NOT_STARTED -> "NEW";
+            default -> "UNKNOWN";
+        };
+    }
+
+    /* A frame as jstack shows it: "pkg.Class.method(File.java:12)". */
+    private static String frameString(Location loc) {
+        Method method = loc.method();
+        StringBuilder sb = new StringBuilder();
+        sb.append(loc.declaringType().name()).append('.').append(method.name()).append('(');
+        if (method.isNative()) {
+            sb.append("Native Method");
+        } else {
+            try {
+                sb.append(loc.sourceName());
+                if (loc.lineNumber() != -1) {
+                    sb.append(':').append(loc.lineNumber());
+                }
+            } catch (AbsentInformationException e) {
+                sb.append("Unknown Source");
+            }
+        }
+        return sb.append(')').toString();
+    }
+
+    private static String objectString(ObjectReference object) {
+        return String.format("<0x%x> (a %s)", object.uniqueID(), object.referenceType().name());
+    }
+
+    private void printGrouped(List<Snapshot> snapshots) {
+        Map<Stack, Stack> stacks = new LinkedHashMap<>();
+        for (Snapshot s : snapshots) {
+            Stack key = new Stack(state(s.status), s.frames);
+            stacks.computeIfAbsent(key, k -> k).threads.add(s);
+        }
+        List<Stack> sorted = new ArrayList<>(stacks.values());
+        sorted.sort((a, b) -> Integer.compare(b.threads.size(), a.threads.size()));
+
+        MessageOutput.println("Thread dump summary", new Object [] {snapshots.size(),
+                                                                    sorted.size(),
+                                                                    pausedMillis});
+        for (Stack stack : sorted) {
+            StringBuilder names = new StringBuilder();
+            int shown = Math.min(NAMES_SHOWN, stack.threads.size());
+            for (int i = 0; i < shown; i++) {
+                if (i > 0) {
+                    names.append(", ");
+                }
+                names.append('"').append(stack.threads.get(i).name).append('"');
+            }
+            if (stack.threads.size() > shown) {
+                names.append(MessageOutput.format("Thread dump more names",
+                                                  new Object [] {stack.threads.size() - shown}));
+            }
+            MessageOutput.println();
+            MessageOutput.println("Thread dump group", new Object [] {stack.threads.size(),
+                                                                      stack.state,
+                                                                      names.toString()});
+            for (Location loc : stack.frames) {
+                MessageOutput.printDirectln("\tat " + frameString(loc));
+            }
+        }
+    }
+
+    private String jstackText(List<Snapshot> snapshots) {
+        String eol = System.lineSeparator();
+        StringBuilder sb = new StringBuilder();
+        sb.append("Full thread dump ").append(vm.name())
+          .append(" (").append(vm.version()).append("):").append(eol);
+        for (Snapshot s : snapshots) {
+            sb.append(eol);
+            sb.append('"').append(s.name).append("\" #").append(s.thread.uniqueID());
+            if (s.thread.isVirtual()) {
+                sb.append(" virtual");
+            }
+            sb.append(eol);
+            sb.append("   java.lang.Thread.State: ").append(state(s.status)).append(eol);
+            for (int i = 0; i < s.frames.size(); i++) {
+                sb.append("\tat ").append(frameString(s.frames.get(i))).append(eol);
+                if (i == 0 && s.contended != null) {
+                    sb.append(s.status == ThreadReference.THREAD_STATUS_MONITOR
+                              ? "\t- waiting to lock " : "\t- waiting on ")
+                      .append(objectString(s.contended)).append(eol);
+                }
+                for (Owned monitor : s.owned) {
+                    if (monitor.depth() == i) {
+                        sb.append("\t- locked ").append(objectString(monitor.monitor())).append(eol);
+                    }
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -41,59 +41,105 @@ import com.sun.jdi.StackFrame;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 class ThreadInfo {
-    // This is a list of all known ThreadInfo objects. It survives
-    // ThreadInfo.invalidateAll, unlike the other static fields below.
-    private static List<ThreadInfo> threads = Collections.synchronizedList(new ArrayList<ThreadInfo>());
-    private static List<ThreadInfo> vthreads = Collections.synchronizedList(new ArrayList<ThreadInfo>());
-    private static boolean gotInitialThreads = false;
+    // All known ThreadInfo objects, by the uniqueID of their thread. It
+    // survives ThreadInfo.invalidateAll, unlike the other static fields
+    // below. Lookups take no lock, so the event handler can look up the
+    // thread of every event however many threads there are.
+    private static final ConcurrentHashMap<Long, ThreadInfo> threads = new ConcurrentHashMap<>();
+    private static volatile boolean gotInitialThreads = false;
 
-    private static ThreadInfo current = null;
-    private static ThreadGroupReference group = null;
+    // Counts changes to 'threads'. A ThreadList is reused until the next one.
+    private static final AtomicLong threadsChanges = new AtomicLong();
+
+    private record ThreadList(long changes, List<ThreadInfo> all, List<ThreadInfo> vthreads) {
+    }
+
+    private static volatile ThreadList threadList = null;
+
+    private static volatile ThreadInfo current = null;
+    private static volatile ThreadGroupReference group = null;
+
+    // Counts the times all threads may have run since they were suspended.
+    // Frames fetched under an older count are stale and never used.
+    private static final AtomicLong resumeCount = new AtomicLong();
+
+    // Counts the ends of pauses, in which the VM is suspended only to look
+    // at its threads (see pauseStarted). A pause leaves the threads that
+    // were stopped before it stopped, so their frame counts hold. JDI
+    // still invalidates every StackFrame when the VM resumes, so frames
+    // are fetched again, and a count fetched during a pause is stale.
+    private static final AtomicLong pauseEnds = new AtomicLong();
+    private static final AtomicInteger openPauses = new AtomicInteger();
+
+    // Counts invalidateAll calls. A frame index set under an older count
+    // is back to zero, without visiting every thread to reset it.
+    private static final AtomicLong invalidations = new AtomicLong();
+
+    // Frames are fetched this many at a time.
+    private static final int FRAME_WINDOW = 32;
 
     private final ThreadReference thread;
+    private final boolean virtual;
     private int currentFrameIndex = 0;
+    private long frameIndexInvalidations = 0;
+
+    // Counts the times this thread alone was resumed.
+    private final AtomicLong threadResumes = new AtomicLong();
+
+    // Frame snapshot: the frame count and a window of frames starting at
+    // snapshotStart, valid while resumeCount is snapshotResumeCount and
+    // threadResumes is snapshotThreadResumes. The frames are valid only
+    // while pauseEnds is snapshotPauseEnds, and so is the count if it
+    // was fetched during a pause.
+    private long snapshotResumeCount = -1;
+    private long snapshotThreadResumes = -1;
+    private long snapshotPauseEnds = -1;
+    private boolean snapshotInPause = false;
+    private int snapshotFrameCount;
+    private int snapshotStart;
+    private List<StackFrame> snapshotFrames;
 
     private ThreadInfo(ThreadReference thread) {
         this.thread = thread;
         if (thread == null) {
             MessageOutput.fatalError("Internal error: null ThreadInfo created");
         }
+        this.virtual = thread.isVirtual();
     }
 
     private static void initThreads() {
         if (!gotInitialThreads) {
-            for (ThreadReference thread : Env.vm().allThreads()) {
-                ThreadInfo ti = new ThreadInfo(thread);
-                if (thread.isVirtual()) {
-                    vthreads.add(ti);
-                } else {
-                    threads.add(ti);
+            synchronized (threads) {
+                if (!gotInitialThreads) {
+                    for (ThreadReference thread : Env.vm().allThreads()) {
+                        threads.putIfAbsent(thread.uniqueID(), new ThreadInfo(thread));
+                    }
+                    threadsChanges.incrementAndGet();
+                    gotInitialThreads = true;
                 }
             }
-            gotInitialThreads = true;
         }
     }
 
     // Returns true if thread is newly added. Returns false if previously added.
     static boolean addThread(ThreadReference thread) {
-        synchronized (threads) {
-            initThreads();
-            ThreadInfo ti = new ThreadInfo(thread);
-            // Guard against duplicates. Duplicates can happen during
-            // initialization when a particular thread might be added both
-            // by a thread start event and by the initial call to threads()
-            if (getThreadInfo(thread) == null) {
-                if (thread.isVirtual()) {
-                    vthreads.add(ti);
-                } else {
-                    threads.add(ti);
-                }
-                return true;
-            }
+        initThreads();
+        long id = thread.uniqueID();
+        // Guard against duplicates. Duplicates can happen during
+        // initialization when a particular thread might be added both
+        // by a thread start event and by the initial call to threads()
+        if (threads.containsKey(id) ||
+            threads.putIfAbsent(id, new ThreadInfo(thread)) != null) {
             return false;
         }
+        threadsChanges.incrementAndGet();
+        return true;
     }
 
     static void removeThread(ThreadReference thread) {
@@ -116,39 +162,82 @@ class ThreadInfo {
             MessageOutput.println("Current thread died. Execution continuing...",
                                   currentThreadName);
         }
-        if (thread.isVirtual()) {
-            vthreads.remove(getThreadInfo(thread));
-        } else {
-            threads.remove(getThreadInfo(thread));
+        if (threads.remove(thread.uniqueID()) != null) {
+            threadsChanges.incrementAndGet();
         }
     }
 
-    static List<ThreadInfo> threads() {
-        synchronized(threads) {
-            initThreads();
-            // Make a copy to allow iteration without synchronization
-            List<ThreadInfo> list = new ArrayList<ThreadInfo>(threads);
-            list.addAll(vthreads); // also include the vthreads list
-            return list;
+    /*
+     * The known threads, platform threads first and then vthreads, each
+     * in the order of their ids. The lists are built once per change to
+     * the set of threads and shared, unmodifiable, until the next one.
+     */
+    private static ThreadList threadList() {
+        initThreads();
+        ThreadList list = threadList;
+        long changes = threadsChanges.get();
+        if (list == null || list.changes() != changes) {
+            List<ThreadInfo> all = new ArrayList<>(threads.values());
+            all.sort(Comparator.comparing((ThreadInfo ti) -> ti.virtual)
+                               .thenComparingLong(ti -> ti.thread.uniqueID()));
+            int firstVirtual = 0;
+            while (firstVirtual < all.size() && !all.get(firstVirtual).virtual) {
+                firstVirtual++;
+            }
+            all = Collections.unmodifiableList(all);
+            list = new ThreadList(changes, all, all.subList(firstVirtual, all.size()));
+            threadList = list;
         }
+        return list;
+    }
+
+    static List<ThreadInfo> threads() {
+        return threadList().all();
     }
 
     static List<ThreadInfo> vthreads() {
-        synchronized(threads) {
-            initThreads();
-            // Make a copy to allow iteration without synchronization
-            return new ArrayList<ThreadInfo>(vthreads);
+        return threadList().vthreads();
+    }
+
+    /**
+     * Note that threads may have run, so that the frames fetched so far
+     * are stale. Call it before or after anything that resumes the
+     * target: commands, method invocations, event sets that resume.
+     */
+    static void resumed() {
+        resumeCount.incrementAndGet();
+    }
+
+    /**
+     * Note that 'thread' alone may have run, so that only its frames
+     * are stale.
+     */
+    static void resumed(ThreadReference thread) {
+        ThreadInfo ti = threads.get(thread.uniqueID());
+        if (ti != null) {
+            ti.threadResumes.incrementAndGet();
         }
     }
 
+    /**
+     * Note that the VM is about to be suspended just to look at its
+     * threads, and then resumed after pauseEnded(). Threads stopped
+     * before keep their frame counts across such a pause.
+     */
+    static void pauseStarted() {
+        openPauses.incrementAndGet();
+    }
+
+    static void pauseEnded() {
+        pauseEnds.incrementAndGet();
+        openPauses.decrementAndGet();
+    }
+
     static void invalidateAll() {
+        resumed();
+        invalidations.incrementAndGet();
         current = null;
         group = null;
-        synchronized (threads) {
-            for (ThreadInfo ti : threads()) {
-                ti.invalidate();
-            }
-        }
     }
 
     static void setThreadGroup(ThreadGroupReference tg) {
@@ -199,17 +288,8 @@ class ThreadInfo {
     }
 
     static ThreadInfo getThreadInfo(long id) {
-        ThreadInfo retInfo = null;
-
-        synchronized (threads) {
-            for (ThreadInfo ti : threads()) {
-                if (ti.thread.uniqueID() == id) {
-                   retInfo = ti;
-                   break;
-                }
-            }
-        }
-        return retInfo;
+        initThreads();
+        return threads.get(id);
     }
 
     static ThreadInfo getThreadInfo(ThreadReference tr) {
@@ -235,8 +315,89 @@ class ThreadInfo {
      *
      * @return a <code>List</code> of the stack frames.
      */
-    List<StackFrame> getStack() throws IncompatibleThreadStateException {
-        return thread.frames();
+    synchronized List<StackFrame> getStack() throws IncompatibleThreadStateException {
+        int count = frameCount();
+        if (snapshotFrames == null || snapshotStart != 0 || snapshotFrames.size() != count) {
+            snapshotFrames = Collections.unmodifiableList(thread.frames());
+            snapshotStart = 0;
+        }
+        return snapshotFrames;
+    }
+
+    /**
+     * Get the number of frames on the thread stack. The count is
+     * fetched once per suspension.
+     *
+     * @return the number of frames.
+     */
+    synchronized int frameCount() throws IncompatibleThreadStateException {
+        long resumes = resumeCount.get();
+        long ownResumes = threadResumes.get();
+        long ends = pauseEnds.get();
+        if (snapshotResumeCount != resumes || snapshotThreadResumes != ownResumes ||
+            (snapshotInPause && snapshotPauseEnds != ends)) {
+            snapshotFrames = null;
+            snapshotFrameCount = thread.frameCount();
+            snapshotResumeCount = resumes;
+            snapshotThreadResumes = ownResumes;
+            snapshotPauseEnds = ends;
+            // The thread may be stopped only by a pause; then the count holds until it ends.
+            snapshotInPause = openPauses.get() > 0 || pauseEnds.get() != ends;
+        } else if (snapshotPauseEnds != ends) {
+            snapshotFrames = null;
+            snapshotPauseEnds = ends;
+        }
+        return snapshotFrameCount;
+    }
+
+    /**
+     * Get a stackframe. The frames around it are fetched along with it,
+     * in one request, and kept until the thread next runs, so moving
+     * up and down the stack costs no more requests.
+     *
+     * @param index    the number of the stackframe. Frame zero is the
+     * closest to the current program counter
+     * @return the stackframe.
+     * @exception ArrayIndexOutOfBoundsException when the
+     * requested frame is beyond the stack boundary
+     */
+    synchronized StackFrame frame(int index) throws IncompatibleThreadStateException {
+        int count = frameCount();
+        if ((index < 0) || (index >= count)) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        if (snapshotFrames == null || index < snapshotStart ||
+            index >= snapshotStart + snapshotFrames.size()) {
+            int start = index - index % FRAME_WINDOW;
+            snapshotFrames = thread.frames(start, Math.min(FRAME_WINDOW, count - start));
+            snapshotStart = start;
+        }
+        return snapshotFrames.get(index - snapshotStart);
+    }
+
+    /**
+     * Get some stackframes, from the snapshot if it holds them, or else
+     * in one request, which then becomes the snapshot.
+     *
+     * @param start    the number of the first stackframe
+     * @param length   the number of stackframes
+     * @return a <code>List</code> of the stack frames.
+     * @exception ArrayIndexOutOfBoundsException when the
+     * requested frames are beyond the stack boundary
+     */
+    synchronized List<StackFrame> frames(int start, int length)
+                                         throws IncompatibleThreadStateException {
+        int count = frameCount();
+        if ((start < 0) || (length < 0) || (start + length > count)) {
+            throw new ArrayIndexOutOfBoundsException(start + length);
+        }
+        if (snapshotFrames != null && start >= snapshotStart &&
+            start + length <= snapshotStart + snapshotFrames.size()) {
+            return snapshotFrames.subList(start - snapshotStart, start - snapshotStart + length);
+        }
+        snapshotFrames = thread.frames(start, length);
+        snapshotStart = start;
+        return snapshotFrames;
     }
 
     /**
@@ -245,10 +406,10 @@ class ThreadInfo {
      * @return the current stackframe.
      */
     StackFrame getCurrentFrame() throws IncompatibleThreadStateException {
-        if (thread.frameCount() == 0) {
+        if (frameCount() == 0) {
             return null;
         }
-        return thread.frame(currentFrameIndex);
+        return frame(getCurrentFrameIndex());
     }
 
     /**
@@ -256,6 +417,7 @@ class ThreadInfo {
      */
     void invalidate() {
         currentFrameIndex = 0;
+        frameIndexInvalidations = invalidations.get();
     }
 
     /* Throw IncompatibleThreadStateException if not suspended */
@@ -272,6 +434,9 @@ class ThreadInfo {
      * closest to the current program counter
      */
     int getCurrentFrameIndex() {
+        if (frameIndexInvalidations != invalidations.get()) {
+            invalidate();
+        }
         return currentFrameIndex;
     }
 
@@ -287,10 +452,11 @@ class ThreadInfo {
      */
     void setCurrentFrameIndex(int nFrame) throws IncompatibleThreadStateException {
         assureSuspended();
-        if ((nFrame < 0) || (nFrame >= thread.frameCount())) {
+        if ((nFrame < 0) || (nFrame >= frameCount())) {
             throw new ArrayIndexOutOfBoundsException();
         }
         currentFrameIndex = nFrame;
+        frameIndexInvalidations = invalidations.get();
     }
 
     /**
@@ -304,7 +470,7 @@ class ThreadInfo {
      * requested frame is beyond the stack boundary
      */
     void up(int nFrames) throws IncompatibleThreadStateException {
-        setCurrentFrameIndex(currentFrameIndex + nFrames);
+        setCurrentFrameIndex(getCurrentFrameIndex() + nFrames);
     }
 
     /**
@@ -317,7 +483,7 @@ class ThreadInfo {
      * requested frame is beyond the stack boundary
      */
     void down(int nFrames) throws IncompatibleThreadStateException {
-        setCurrentFrameIndex(currentFrameIndex - nFrames);
+        setCurrentFrameIndex(getCurrentFrameIndex() - nFrames);
     }
 
 }
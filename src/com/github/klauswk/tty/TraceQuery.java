@@ -0,0 +1,281 @@
+package com.github.klauswk.tty;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a ring file written by TraceRecorder, for the "tracequery"
+ * command.
+ *
+ * By default the matching methods are summarized: number of calls and
+ * total and average time between entry and exit, with entries and exits
+ * paired on a stack per thread. Calls whose entry was overwritten in the
+ * ring, or that had not returned when the recording stopped, are left
+ * out of the times. "events <n>" lists the last n matching records
+ * instead.
+ */
+class TraceQuery {
+
+    private static final class MethodStats {
+        final int id;
+        long entries = 0;
+        long calls = 0;
+        long totalNanos = 0;
+        long maxNanos = 0;
+
+        MethodStats(int id) {
+            this.id = id;
+        }
+    }
+
+    private final Path file;
+    private final Map<Integer, String> methodNames = new HashMap<>();
+    private final Map<Integer, String> threadNames = new HashMap<>();
+
+    private ByteBuffer ring;
+    private int capacity;
+    private long written;
+
+    private TraceQuery(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Run "tracequery [file <path>] [thread <name>] [method <name>]
+     * [top <n>] [events <n>]". Thread and method names match on any
+     * substring.
+     */
+    static void query(String[] args) {
+        Path file = null;
+        String threadFilter = null;
+        String methodFilter = null;
+        int top = 20;
+        int events = -1;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (i + 1 == args.length) {
+                    MessageOutput.println("tracequery usage");
+                    return;
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "file" -> file = Path.of(value);
+                    case "thread" -> threadFilter = value;
+                    case "method" -> methodFilter = value;
+                    case "top" -> top = Integer.parseInt(value);
+                    case "events" -> events = Integer.parseInt(value);
+                    default -> {
+                        MessageOutput.println("tracequery usage");
+                        return;
+                    }
+                }
+            }
+        } catch (NumberFormatException e) {
+            MessageOutput.println("tracequery usage");
+            return;
+        }
+        if (file == null) {
+            TraceRecorder recorder = TraceRecorder.current();
+            file = (recorder != null) ? recorder.file() : Path.of(TraceRecorder.DEFAULT_FILE);
+        }
+
+        TraceQuery query = new TraceQuery(file);
+        try {
+            query.open();
+        } catch (IOException e) {
+            MessageOutput.println("Unable to read trace file", new Object [] {file.toString(),
+                                                                            e.toString()});
+            return;
+        }
+        if (events >= 0) {
+            query.printEvents(threadFilter, methodFilter, events);
+        } else {
+            query.printSummary(threadFilter, methodFilter, top);
+        }
+    }
+
+    private void open() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            /*
+             * The recorder may still be writing; the query covers the
+             * records written when the header is read.
+             */
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.limit() < TraceRecorder.HEADER_SIZE ||
+                mapped.getInt(0) != TraceRecorder.MAGIC ||
+                mapped.getInt(4) != TraceRecorder.FORMAT_VERSION) {
+                throw new IOException("not a trace recording");
+            }
+            capacity = mapped.getInt(TraceRecorder.CAPACITY_OFFSET);
+            written = mapped.getLong(TraceRecorder.WRITTEN_OFFSET);
+            long size = TraceRecorder.HEADER_SIZE + (long)capacity * TraceRecorder.RECORD_SIZE;
+            if (capacity <= 0 || mapped.limit() < size) {
+                throw new IOException("truncated trace recording");
+            }
+            ring = mapped;
+        }
+        Path names = TraceRecorder.namesFile(file);
+        if (Files.exists(names)) {
+            try (BufferedReader reader = Files.newBufferedReader(names, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    readName(line);
+                }
+            }
+        }
+    }
+
+    private void readName(String line) {
+        String[] fields = line.split(" ", 3);
+        if (fields.length < 3) {
+            return;
+        }
+        try {
+            int id = Integer.parseInt(fields[1]);
+            if (fields[0].equals("M")) {
+                methodNames.put(id, fields[2]);
+            } else if (fields[0].equals("T")) {
+                // "<unique id> <name>"; the name may contain blanks.
+                String rest = fields[2];
+                int blank = rest.indexOf(' ');
+                threadNames.put(id, blank < 0 ? rest : rest.substring(blank + 1) +
+                                                       " (" + rest.substring(0, blank) + ")");
+            }
+        } catch (NumberFormatException e) {
+            // Skip a line cut short by a crash of the recorder.
+        }
+    }
+
+    private String methodName(int id) {
+        String name = methodNames.get(id);
+        return (name == null) ? "#" + id : name;
+    }
+
+    private String threadName(int id) {
+        String name = threadNames.get(id);
+        return (name == null) ? "#" + id : name;
+    }
+
+    /* Index of the oldest record still in the ring. */
+    private long first() {
+        return Math.max(0, written - capacity);
+    }
+
+    private int offset(long index) {
+        return TraceRecorder.HEADER_SIZE + (int)(index % capacity) * TraceRecorder.RECORD_SIZE;
+    }
+
+    private boolean matches(Map<Integer, Boolean> cache, Map<Integer, String> names,
+                            int id, String filter) {
+        if (filter == null) {
+            return true;
+        }
+        return cache.computeIfAbsent(id, k -> {
+            String name = names.get(k);
+            return name != null && name.contains(filter);
+        });
+    }
+
+    private void printSummary(String threadFilter, String methodFilter, int top) {
+        Map<Integer, Boolean> threadMatches = new HashMap<>();
+        Map<Integer, Boolean> methodMatches = new HashMap<>();
+        Map<Integer, MethodStats> stats = new HashMap<>();
+        Map<Integer, ArrayDeque<long[]>> stacks = new HashMap<>();
+
+        for (long index = first(); index < written; index++) {
+            int offset = offset(index);
+            long nanos = ring.getLong(offset);
+            int thread = ring.getInt(offset + 8);
+            int word = ring.getInt(offset + 12);
+            boolean exit = (word & TraceRecorder.EXIT_FLAG) != 0;
+            int method = word & ~TraceRecorder.EXIT_FLAG;
+            if (!matches(threadMatches, threadNames, thread, threadFilter)) {
+                continue;
+            }
+            // Pair on every method, so a filtered method's time is still right.
+            ArrayDeque<long[]> stack = stacks.computeIfAbsent(thread, k -> new ArrayDeque<>());
+            if (!exit) {
+                stack.push(new long[] {method, nanos});
+                if (matches(methodMatches, methodNames, method, methodFilter)) {
+                    stats.computeIfAbsent(method, MethodStats::new).entries++;
+                }
+                continue;
+            }
+            // Unwind to the matching entry; exceptions can skip exit events.
+            while (!stack.isEmpty() && stack.peek()[0] != method) {
+                stack.pop();
+            }
+            if (stack.isEmpty()) {
+                continue;       // entered before the oldest record
+            }
+            long elapsed = nanos - stack.pop()[1];
+            if (matches(methodMatches, methodNames, method, methodFilter)) {
+                MethodStats s = stats.computeIfAbsent(method, MethodStats::new);
+                s.calls++;
+                s.totalNanos += elapsed;
+                s.maxNanos = Math.max(s.maxNanos, elapsed);
+            }
+        }
+
+        List<MethodStats> sorted = new ArrayList<>(stats.values());
+        sorted.sort(Comparator.comparingLong((MethodStats s) -> s.totalNanos).reversed()
+                              .thenComparingLong(s -> -s.entries));
+        MessageOutput.println("Trace summary", new Object [] {file.toString(),
+                                                              written - first(),
+                                                              written});
+        MessageOutput.println("Trace summary header");
+        for (MethodStats s : sorted.subList(0, Math.min(top, sorted.size()))) {
+            long average = (s.calls == 0) ? 0 : s.totalNanos / s.calls;
+            MessageOutput.printDirectln(String.format("%10d %10d %14.3f %12.3f %12.3f  %s",
+                                                      s.entries, s.calls,
+                                                      s.totalNanos / 1e6,
+                                                      average / 1e6,
+                                                      s.maxNanos / 1e6,
+                                                      methodName(s.id)));
+        }
+    }
+
+    private void printEvents(String threadFilter, String methodFilter, int count) {
+        Map<Integer, Boolean> threadMatches = new HashMap<>();
+        Map<Integer, Boolean> methodMatches = new HashMap<>();
+        ArrayDeque<Long> last = new ArrayDeque<>();
+
+        for (long index = first(); index < written && count > 0; index++) {
+            int offset = offset(index);
+            int thread = ring.getInt(offset + 8);
+            int method = ring.getInt(offset + 12) & ~TraceRecorder.EXIT_FLAG;
+            if (matches(threadMatches, threadNames, thread, threadFilter) &&
+                matches(methodMatches, methodNames, method, methodFilter)) {
+                if (last.size() == count) {
+                    last.removeFirst();
+                }
+                last.addLast(index);
+            }
+        }
+        for (long index : last) {
+            int offset = offset(index);
+            long nanos = ring.getLong(offset);
+            int word = ring.getInt(offset + 12);
+            boolean exit = (word & TraceRecorder.EXIT_FLAG) != 0;
+            MessageOutput.printDirectln(String.format("%14.6f %-5s %s  [%s]",
+                                                      nanos / 1e9,
+                                                      exit ? "exit" : "entry",
+                                                      methodName(word & ~TraceRecorder.EXIT_FLAG),
+                                                      threadName(ring.getInt(offset + 8))));
+        }
+    }
+}
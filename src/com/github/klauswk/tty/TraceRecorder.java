@@ -0,0 +1,194 @@
+package com.github.klauswk.tty;
+
+import com.sun.jdi.Method;
+import com.sun.jdi.ThreadReference;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records method entries and exits from "trace record" into a
+ * memory-mapped ring file instead of printing them.
+ *
+ * The file starts with a HEADER_SIZE byte header, followed by
+ * 'capacity' records of RECORD_SIZE bytes each:
+ *
+ *     long  nanoseconds since the recording started
+ *     int   thread id
+ *     int   method id, with EXIT_FLAG set for an exit
+ *
+ * Once the ring is full the oldest records are overwritten; the header
+ * holds the total number written. Ids are interned: the first time a
+ * thread or method is seen, its name goes to a side table, the
+ * ".names" file next to the ring, one line per id:
+ *
+ *     M <id> <declaring type>.<method name><signature>
+ *     T <id> <unique id> <thread name>
+ *
+ * Timestamps are taken by the debugger when it receives the event.
+ * See TraceQuery for reading the files.
+ */
+class TraceRecorder implements MethodEventSink {
+
+    static final int MAGIC = 0x4b4a4254;  // "KJBT"
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 16;
+    static final int EXIT_FLAG = 0x80000000;
+
+    /* Header layout. */
+    static final int CAPACITY_OFFSET = 8;
+    static final int WRITTEN_OFFSET = 16;
+    static final int START_MILLIS_OFFSET = 24;
+
+    static final int DEFAULT_CAPACITY = 1 << 20;
+    static final String DEFAULT_FILE = "kjb-trace.bin";
+
+    private static TraceRecorder current = null;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer ring;
+    private final int capacity;
+    private final long startNanos;
+    private long written = 0;
+
+    private final BufferedWriter names;
+    private final Map<Method, Integer> methodIds = new HashMap<>();
+    private final Map<ThreadReference, Integer> threadIds = new HashMap<>();
+
+    private TraceRecorder(Path file, int capacity) throws IOException {
+        this.file = file;
+        this.capacity = capacity;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                        StandardOpenOption.READ, StandardOpenOption.WRITE,
+                                        StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            long size = HEADER_SIZE + (long)capacity * RECORD_SIZE;
+            this.ring = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            this.names = Files.newBufferedWriter(namesFile(file), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.startNanos = System.nanoTime();
+        ring.putInt(0, MAGIC);
+        ring.putInt(4, FORMAT_VERSION);
+        ring.putInt(CAPACITY_OFFSET, capacity);
+        ring.putLong(WRITTEN_OFFSET, 0);
+        ring.putLong(START_MILLIS_OFFSET, System.currentTimeMillis());
+    }
+
+    static Path namesFile(Path file) {
+        return Paths.get(file.toString() + ".names");
+    }
+
+    /**
+     * Start recording into 'file', ending any recording in progress.
+     */
+    static synchronized TraceRecorder start(Path file) throws IOException {
+        stop();
+        current = new TraceRecorder(file, DEFAULT_CAPACITY);
+        return current;
+    }
+
+    /**
+     * End the recording in progress, if any.
+     * @return the recorder that was stopped, or null.
+     */
+    static synchronized TraceRecorder stop() {
+        TraceRecorder recorder = current;
+        if (recorder != null) {
+            recorder.close();
+            current = null;
+        }
+        return recorder;
+    }
+
+    static synchronized TraceRecorder current() {
+        return current;
+    }
+
+    Path file() {
+        return file;
+    }
+
+    synchronized long written() {
+        return written;
+    }
+
+    @Override
+    public void methodEntered(ThreadReference thread, Method method) {
+        record(thread, method, false);
+    }
+
+    @Override
+    public void methodExited(ThreadReference thread, Method method) {
+        record(thread, method, true);
+    }
+
+    private synchronized void record(ThreadReference thread, Method method, boolean exit) {
+        if (!channel.isOpen()) {
+            return;     // stopped while the event was queued
+        }
+        long nanos = System.nanoTime() - startNanos;
+        int threadId = threadId(thread);
+        int methodId = methodId(method);
+        int offset = HEADER_SIZE + (int)(written % capacity) * RECORD_SIZE;
+        ring.putLong(offset, nanos);
+        ring.putInt(offset + 8, threadId);
+        ring.putInt(offset + 12, exit ? (methodId | EXIT_FLAG) : methodId);
+        ring.putLong(WRITTEN_OFFSET, ++written);
+    }
+
+    private int methodId(Method method) {
+        Integer id = methodIds.get(method);
+        if (id == null) {
+            id = methodIds.size();
+            methodIds.put(method, id);
+            writeName("M " + id + " " + method.declaringType().name() + "." +
+                      method.name() + method.signature());
+        }
+        return id;
+    }
+
+    private int threadId(ThreadReference thread) {
+        Integer id = threadIds.get(thread);
+        if (id == null) {
+            id = threadIds.size();
+            threadIds.put(thread, id);
+            writeName("T " + id + " " + thread.uniqueID() + " " + thread.name());
+        }
+        return id;
+    }
+
+    private void writeName(String line) {
+        try {
+            names.write(line);
+            names.newLine();
+            // Few and far between once warmed up; keep the table readable.
+            names.flush();
+        } catch (IOException e) {
+            // The ids stay usable in the ring; tracequery shows them unnamed.
+        }
+    }
+
+    private synchronized void close() {
+        try {
+            ring.force();
+            names.close();
+            channel.close();
+        } catch (IOException e) {
+            // Nothing more can be done.
+        }
+    }
+}
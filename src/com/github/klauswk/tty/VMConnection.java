@@ -374,6 +374,7 @@ class VMConnection {
                 (MessageOutput.format("Invalid connect type"));
         }
         vm.setDebugTraceMode(traceFlags);
+        Env.loadedClasses().track(vm);
         if (vm.canBeModified()){
             setEventRequests(vm);
             resolveEventRequests();
@@ -475,6 +476,10 @@ class VMConnection {
         }
         tsr.enable();
         tdr.enable();
+
+        if (Env.vthreadSampleRate() > 0) {
+            VThreadSampler.start(vm, Env.vthreadSampleRate());
+        }
     }
 
     private void resolveEventRequests() {
@@ -0,0 +1,310 @@
+package com.github.klauswk.tty;
+
+import com.sun.jdi.AbsentInformationException;
+import com.sun.jdi.IncompatibleThreadStateException;
+import com.sun.jdi.Location;
+import com.sun.jdi.Method;
+import com.sun.jdi.ObjectCollectedException;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.StackFrame;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.VirtualMachine;
+import com.sun.jdi.event.BreakpointEvent;
+import com.sun.jdi.event.ClassPrepareEvent;
+import com.sun.jdi.event.Event;
+import com.sun.jdi.event.ThreadDeathEvent;
+import com.sun.jdi.request.BreakpointRequest;
+import com.sun.jdi.request.ClassPrepareRequest;
+import com.sun.jdi.request.EventRequest;
+import com.sun.jdi.request.ThreadDeathRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Samples the starts and ends of virtual threads, for the "vthreads"
+ * command and the -samplevthreads option, as a cheap alternative to
+ * -trackallthreads.
+ *
+ * Instead of a thread start and death event for every virtual thread,
+ * a breakpoint in VirtualThread.start(ThreadContainer) with a count
+ * filter of 'rate' reports one start in 'rate', and is re-armed each
+ * time it fires; the others never leave the target VM. At a sampled
+ * start the creating thread is stopped, so the frame that created the
+ * virtual thread (the first one outside the JDK) is known, and a
+ * SUSPEND_NONE death request for just that virtual thread reports its
+ * end. Each sample stands for 'rate' virtual threads, so the started,
+ * ended, live and peak live counts kept in total and per creating
+ * frame are estimates, with an error of about 'rate'.
+ *
+ * Sampled virtual threads get no ThreadInfo; like any other virtual
+ * thread, one is made when the thread hits an event of its own.
+ */
+class VThreadSampler {
+
+    static final String START_CLASS = "java.lang.VirtualThread";
+    static final String START_METHOD = "start";
+    static final String START_SIGNATURE = "(Ljdk/internal/vm/ThreadContainer;)V";
+    static final int TOP = 20;
+
+    private static final String[] JDK_PREFIXES = {"java.", "jdk.", "sun."};
+
+    /* The virtual threads started from one frame. */
+    private static final class Site {
+        final Location frame;
+        long started = 0;
+        long ended = 0;
+        long peak = 0;
+
+        Site(Location frame) {
+            this.frame = frame;
+        }
+
+        long live() {
+            return started - ended;
+        }
+    }
+
+    private static volatile VThreadSampler current = null;
+
+    private final VirtualMachine vm;
+    private final int rate;
+    private final long startMillis = System.currentTimeMillis();
+    private boolean stopped = false;
+
+    private ClassPrepareRequest prepareRequest = null;
+    private BreakpointRequest startRequest = null;
+    private final Set<ThreadDeathRequest> deathRequests = new HashSet<>();
+
+    private final Map<Location, Site> sites = new HashMap<>();
+    private final Site total = new Site(null);
+
+    private VThreadSampler(VirtualMachine vm, int rate) {
+        this.vm = vm;
+        this.rate = rate;
+        List<ReferenceType> types = vm.classesByName(START_CLASS);
+        if (types.isEmpty()) {
+            prepareRequest = vm.eventRequestManager().createClassPrepareRequest();
+            prepareRequest.addClassFilter(START_CLASS);
+            prepareRequest.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+            prepareRequest.putProperty(VThreadSampler.class, this);
+            prepareRequest.enable();
+        } else {
+            arm(types.get(0));
+        }
+    }
+
+    /**
+     * Start sampling one in 'rate' virtual thread starts, ending any
+     * sampling in progress.
+     */
+    static synchronized VThreadSampler start(VirtualMachine vm, int rate) {
+        stop();
+        current = new VThreadSampler(vm, rate);
+        return current;
+    }
+
+    /**
+     * End the sampling in progress, if any.
+     * @return the sampler that was stopped, or null.
+     */
+    static synchronized VThreadSampler stop() {
+        VThreadSampler sampler = current;
+        if (sampler != null) {
+            sampler.finish();
+            current = null;
+        }
+        return sampler;
+    }
+
+    static VThreadSampler current() {
+        return current;
+    }
+
+    int rate() {
+        return rate;
+    }
+
+    /**
+     * Apply 'event' if it came from one of a sampler's requests.
+     * @return true if it did, in which case it needs no further handling.
+     */
+    static boolean update(Event event) {
+        EventRequest request = event.request();
+        if (request == null) {
+            return false;
+        }
+        VThreadSampler sampler = (VThreadSampler)request.getProperty(VThreadSampler.class);
+        if (sampler == null) {
+            return false;
+        }
+        sampler.handle(event);
+        return true;
+    }
+
+    private synchronized void handle(Event event) {
+        if (stopped) {
+            return;     // stopped while the event was queued
+        }
+        if (event instanceof BreakpointEvent be) {
+            started(be);
+        } else if (event instanceof ThreadDeathEvent tde) {
+            ended(tde);
+        } else if (event instanceof ClassPrepareEvent cpe) {
+            deleteRequest(prepareRequest);
+            prepareRequest = null;
+            arm(cpe.referenceType());
+        }
+    }
+
+    private void arm(ReferenceType type) {
+        Method start = null;
+        for (Method method : type.methodsByName(START_METHOD, START_SIGNATURE)) {
+            start = method;
+        }
+        if (start == null || start.location() == null) {
+            MessageOutput.println("Unable to sample vthreads", type.name());
+            return;
+        }
+        startRequest = vm.eventRequestManager().createBreakpointRequest(start.location());
+        startRequest.addCountFilter(rate);
+        startRequest.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+        startRequest.putProperty(VThreadSampler.class, this);
+        startRequest.enable();
+    }
+
+    private void started(BreakpointEvent be) {
+        // A count filter reports once; setting the request again restarts the count.
+        startRequest.disable();
+        startRequest.enable();
+
+        ThreadReference vthread;
+        Location frame = null;
+        try {
+            List<StackFrame> frames = be.thread().frames();
+            ObjectReference self = frames.get(0).thisObject();
+            if (!(self instanceof ThreadReference)) {
+                return;
+            }
+            vthread = (ThreadReference)self;
+            for (int i = 1; i < frames.size(); i++) {
+                Location loc = frames.get(i).location();
+                if (frame == null || !isJdk(loc)) {
+                    frame = loc;    // the caller, unless a frame outside the JDK is found
+                }
+                if (!isJdk(loc)) {
+                    break;
+                }
+            }
+        } catch (IncompatibleThreadStateException | ObjectCollectedException e) {
+            return;
+        }
+
+        Site site = sites.computeIfAbsent(frame, Site::new);
+        ThreadDeathRequest tdr = vm.eventRequestManager().createThreadDeathRequest();
+        tdr.addThreadFilter(vthread);
+        tdr.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+        tdr.putProperty(VThreadSampler.class, this);
+        tdr.putProperty(Site.class, site);
+        tdr.enable();
+        deathRequests.add(tdr);
+
+        site.started += rate;
+        site.peak = Math.max(site.peak, site.live());
+        total.started += rate;
+        total.peak = Math.max(total.peak, total.live());
+    }
+
+    private void ended(ThreadDeathEvent tde) {
+        ThreadDeathRequest tdr = (ThreadDeathRequest)tde.request();
+        if (!deathRequests.remove(tdr)) {
+            return;
+        }
+        deleteRequest(tdr);
+        ((Site)tdr.getProperty(Site.class)).ended += rate;
+        total.ended += rate;
+    }
+
+    private static boolean isJdk(Location loc) {
+        String name = loc.declaringType().name();
+        for (String prefix : JDK_PREFIXES) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void finish() {
+        stopped = true;
+        deleteRequest(prepareRequest);
+        deleteRequest(startRequest);
+        for (ThreadDeathRequest tdr : deathRequests) {
+            deleteRequest(tdr);
+        }
+        deathRequests.clear();
+    }
+
+    private void deleteRequest(EventRequest request) {
+        if (request == null) {
+            return;
+        }
+        try {
+            vm.eventRequestManager().deleteEventRequest(request);
+        } catch (RuntimeException e) {
+            // The VM is gone; so is the request.
+        }
+    }
+
+    /* A frame as "pkg.Class.method(File.java:12)". */
+    private static String frameString(Location loc) {
+        if (loc == null) {
+            return "?";
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(loc.declaringType().name()).append('.').append(loc.method().name()).append('(');
+        try {
+            sb.append(loc.sourceName());
+        } catch (AbsentInformationException e) {
+            sb.append("Unknown Source");
+        }
+        if (loc.lineNumber() != -1) {
+            sb.append(':').append(loc.lineNumber());
+        }
+        return sb.append(')').toString();
+    }
+
+    /**
+     * Print the estimated counts, in total and for the creating frames
+     * with the highest peaks.
+     */
+    synchronized void print() {
+        MessageOutput.println("VThread sample summary",
+                              new Object [] {rate,
+                                             (System.currentTimeMillis() - startMillis) / 1000.0,
+                                             total.started, total.ended,
+                                             total.live(), total.peak});
+        if (sites.isEmpty()) {
+            return;
+        }
+        List<Site> sorted = new ArrayList<>(sites.values());
+        sorted.sort((a, b) -> a.peak != b.peak ? Long.compare(b.peak, a.peak)
+                                               : Long.compare(b.started, a.started));
+        MessageOutput.println("VThread sample table header");
+        for (int i = 0; i < Math.min(TOP, sorted.size()); i++) {
+            Site site = sorted.get(i);
+            MessageOutput.printDirectln(String.format("%10d %10d %10d %10d  %s",
+                                                      site.started, site.ended,
+                                                      site.live(), site.peak,
+                                                      frameString(site.frame)));
+        }
+        if (sorted.size() > TOP) {
+            MessageOutput.println("VThread sample more", new Object [] {sorted.size() - TOP});
+        }
+    }
+}